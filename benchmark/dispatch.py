@@ -0,0 +1,83 @@
+"""
+Times the tree-walker dispatching on the kind tags of the nodes against
+dispatching with the visitors, on the programs of "tests" scaled up
+
+    python3 benchmark/dispatch.py [repetitions] [yai options]
+
+Every test that runs without an error is put in a block, repeated in a
+loop "repetitions" times (1000 by default), and the resulting scripts
+are concatenated into one, so both strategies run every kind of node
+from the same call sites. Tests that only work at the top level, like
+ones defining a global twice or using one before it is defined, fail
+in a block and are left out. Output is discarded, and each strategy is
+timed over a few runs, keeping the best.
+"""
+
+import os
+import subprocess
+import sys
+import tempfile
+import time
+
+RUNS = 3
+STRATEGIES = ['--dispatch=visitor', '--dispatch=switch']
+
+
+def program(path):
+    # Drops the expected output at the end of the test
+    with open(path, 'r') as file:
+        source = file.read()
+    return source.split('/*\n// stdout')[0]
+
+
+def scaled(source, repetitions):
+    return ('for(var rep = 0; rep < ' + str(repetitions) + '; rep = rep + 1) {\n'
+            + source + '\n}\n')
+
+
+def run(path, options):
+    return subprocess.run(['./yai', '--no-cache', *options, path],
+                          stdout=subprocess.DEVNULL, stderr=subprocess.DEVNULL)
+
+
+def tests():
+    for root, _, files in sorted(os.walk('tests')):
+        for file in sorted(files):
+            yield os.path.join(root, file)
+
+
+def main():
+    args = sys.argv[1:]
+    repetitions = 1000
+    if args and args[0].isdigit():
+        repetitions = int(args.pop(0))
+
+    with tempfile.TemporaryDirectory() as directory:
+        # Keep the tests that run without an error in a block
+        blocks = []
+        check = os.path.join(directory, 'check.yai')
+        for test in tests():
+            source = '{\n' + program(test) + '\n}'
+            with open(check, 'w') as file:
+                file.write(source)
+            if run(check, args).returncode == 0:
+                blocks.append(source)
+
+        script = os.path.join(directory, 'dispatch.yai')
+        with open(script, 'w') as file:
+            file.write(scaled('\n'.join(blocks), repetitions))
+        print(len(blocks), 'tests, repeated', repetitions, 'times')
+
+        for strategy in STRATEGIES:
+            best = None
+            for _ in range(RUNS):
+                start = time.perf_counter()
+                if run(script, [strategy, *args]).returncode != 0:
+                    sys.exit('Failed with ' + strategy)
+                elapsed = time.perf_counter() - start
+                best = elapsed if best is None else min(best, elapsed)
+            print('{0: <20} {1:.2f}s'.format(strategy, best))
+
+
+if __name__ == '__main__':
+    main()
\ No newline at end of file
@@ -0,0 +1,52 @@
+"""
+Writes a script of generated expressions, to time the Parser with
+
+    python3 benchmark/expressions.py > /tmp/expressions.yai
+    time java -cp build com.interpreter.yai.Yai --no-cache --no-optimize /tmp/expressions.yai
+
+The expressions are in a function that is never called, so the time is
+mostly spent scanning, parsing and resolving them.
+"""
+
+import random
+import sys
+
+OPERATORS = ['+', '-', '*', '/', '<', '<=', '>', '>=', '==', '!=', 'and', 'or']
+
+
+def operand(depth):
+    kind = random.randrange(6)
+    if depth == 0 or kind == 0:
+        return random.choice(['a', 'b', 'c', str(random.randrange(100)), 'true', 'nil'])
+    if kind == 1:
+        return random.choice(['-', '!']) + operand(depth - 1)
+    if kind == 2:
+        return '(' + expression(depth - 1) + ')'
+    if kind == 3:
+        return 'f(' + expression(depth - 1) + ', ' + operand(depth - 1) + ')'
+    if kind == 4:
+        return 'o.p.q'
+    return expression(depth - 1)
+
+
+def expression(depth):
+    terms = [operand(depth)]
+    for _ in range(random.randrange(4)):
+        terms.append(random.choice(OPERATORS))
+        terms.append(operand(depth))
+    return ' '.join(terms)
+
+
+def main():
+    lines = int(sys.argv[1]) if len(sys.argv) > 1 else 100000
+    random.seed(0)
+    print('fun f(a, b) { return a; }')
+    print('fun unused(a, b, c, o) {')
+    for _ in range(lines):
+        print('  a = ' + expression(3) + ';')
+    print('}')
+    print('print "done";')
+
+
+if __name__ == '__main__':
+    main()
\ No newline at end of file
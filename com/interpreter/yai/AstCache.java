@@ -0,0 +1,783 @@
+package com.interpreter.yai;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+import com.interpreter.yai.Expr.Assign;
+import com.interpreter.yai.Expr.Binary;
+import com.interpreter.yai.Expr.Call;
+import com.interpreter.yai.Expr.Get;
+import com.interpreter.yai.Expr.Grouping;
+import com.interpreter.yai.Expr.Inline;
+import com.interpreter.yai.Expr.Invoke;
+import com.interpreter.yai.Expr.Literal;
+import com.interpreter.yai.Expr.Logical;
+import com.interpreter.yai.Expr.Super;
+import com.interpreter.yai.Expr.This;
+import com.interpreter.yai.Expr.Unary;
+import com.interpreter.yai.Expr.Variable;
+import com.interpreter.yai.Stmt.Block;
+import com.interpreter.yai.Stmt.Break;
+import com.interpreter.yai.Stmt.Continue;
+import com.interpreter.yai.Stmt.Expression;
+import com.interpreter.yai.Stmt.For;
+import com.interpreter.yai.Stmt.Function;
+import com.interpreter.yai.Stmt.If;
+import com.interpreter.yai.Stmt.Print;
+import com.interpreter.yai.Stmt.Return;
+import com.interpreter.yai.Stmt.While;
+
+/**
+ * Resolved ASTs of scripts, saved as ".yaic" files in a cache directory, so
+ * running a script that didn't change skips scanning, parsing and resolving
+ * it.
+ *
+ * A cache file is named after the hash() of the script it was made from,
+ * which includes the BUILD of the interpreter. It starts with MAGIC,
+ * FORMAT, that hash and the CRC-32C of the rest of the file, and is only
+ * used when all four match. The nodes follow
+ * in prefix order, each as a tag and its fields, with the slots and depths
+ * the Resolver gave them. Strings are written once, and then by index.
+ *
+ * BUILD is a hash of every source of the interpreter and of the generator
+ * of the AST, written by the Makefile, so a change to any of them makes
+ * every cached AST stale without anyone bumping a version. FORMAT only covers the
+ * header. Without a BUILD, like with classes not built by make, the
+ * cache is not used.
+ */
+class AstCache implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private static final int MAGIC = 0x59414943;
+    private static final int FORMAT = 3;
+    private static final byte[] BUILD = build();
+
+    // Tags of the nodes, 0 is null
+    private static final int ASSIGN = 1, BINARY = 2, CALL = 3, GET = 4, GROUPING = 5,
+        INVOKE = 6, LITERAL = 7, LOGICAL = 8, SET = 9, SUPER = 10, THIS = 11, UNARY = 12,
+        VARIABLE = 13;
+    private static final int BLOCK = 1, BREAK = 2, CLASS = 3, CONTINUE = 4, EXPRESSION = 5,
+        FOR = 6, FUNCTION = 7, IF = 8, PRINT = 9, RETURN = 10, VAR = 11, WHILE = 12;
+
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final DataOutputStream out;
+    private final DataInputStream in;
+    // Gives the cells of the globals read back, which aren't saved
+    private final Environment globals;
+    private final Map<String, Integer> written = new HashMap<>();
+    private final List<String> read = new ArrayList<>();
+
+    private AstCache(DataOutputStream out, DataInputStream in, Environment globals) {
+        this.out = out;
+        this.in = in;
+        this.globals = globals;
+    }
+
+    private static byte[] build() {
+        try(InputStream input = AstCache.class.getResourceAsStream("build-id")) {
+            if(input == null) return null;
+            return new String(input.readAllBytes(), StandardCharsets.US_ASCII).trim()
+                .getBytes(StandardCharsets.US_ASCII);
+        } catch(IOException error) {
+            return null;
+        }
+    }
+
+    /**
+     * Whether the classes were built with a BUILD to key the cache with.
+     */
+    static boolean available() {
+        return BUILD != null;
+    }
+
+    /**
+     * "yai" in $XDG_CACHE_HOME, or in ~/.cache without it.
+     */
+    static Path directory() {
+        String cacheHome = System.getenv("XDG_CACHE_HOME");
+        if(cacheHome == null || cacheHome.isEmpty()) {
+            return Paths.get(System.getProperty("user.home"), ".cache", "yai");
+        }
+        return Paths.get(cacheHome, "yai");
+    }
+
+    static Path pathOf(Path directory, byte[] hash) {
+        StringBuilder name = new StringBuilder();
+        for(byte part : hash) {
+            name.append(String.format("%02x", part));
+        }
+        return directory.resolve(name.append(".yaic").toString());
+    }
+
+    /**
+     * Key of a script in the cache: the size of the script, its CRC-32C and
+     * its 64-bit FNV-1a hash, followed by the BUILD. MessageDigest would take
+     * longer to load than a short script takes to run.
+     */
+    static byte[] hash(Path script) throws IOException {
+        CRC32C crc = new CRC32C();
+        long fnv = 0xcbf29ce484222325L;
+        long size = 0;
+        try(InputStream input = Files.newInputStream(script)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while((read = input.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+                for(int i = 0; i < read; i++) {
+                    fnv = (fnv ^ (buffer[i] & 0xff)) * 0x100000001b3L;
+                }
+                size += read;
+            }
+        }
+        return ByteBuffer.allocate(20 + BUILD.length).putLong(size).putInt((int)crc.getValue())
+            .putLong(fnv).put(BUILD).array();
+    }
+
+    /**
+     * The statements saved for a script of the given hash, or null if the
+     * cache is missing, stale or unreadable. References to globals are
+     * bound to cells of "globals", as the Resolver does.
+     */
+    static List<Stmt> load(Path cache, byte[] hash, Environment globals) {
+        if(!Files.isRegularFile(cache)) return null;
+        try {
+            ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(cache));
+            if(file.remaining() < 12 + hash.length) return null;
+            if(file.getInt() != MAGIC || file.getInt() != FORMAT) return null;
+            byte[] saved = new byte[hash.length];
+            file.get(saved);
+            if(!Arrays.equals(saved, hash)) return null;
+
+            // A damaged file would otherwise decode into a different program
+            int checksum = file.getInt();
+            CRC32C crc = new CRC32C();
+            crc.update(file.duplicate());
+            if((int)crc.getValue() != checksum) return null;
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                file.array(), file.position(), file.remaining()));
+            return new AstCache(null, in, globals).readStatements();
+        } catch(IOException | RuntimeException error) {
+            return null;
+        }
+    }
+
+    /**
+     * Saves the resolved statements of a script, unless the directory
+     * can't be written, which only costs the next run the front end.
+     */
+    static void save(Path cache, byte[] hash, List<Stmt> statements) {
+        Path temporary = null;
+        try {
+            Path directory = cache.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            // Written aside and moved, so a run never reads half a file
+            temporary = Files.createTempFile(directory, ".yaic", null);
+            ByteArrayOutputStream contents = new ByteArrayOutputStream();
+            new AstCache(new DataOutputStream(contents), null, null).writeStatements(statements);
+            CRC32C crc = new CRC32C();
+            crc.update(contents.toByteArray());
+
+            ByteBuffer header = ByteBuffer.allocate(12 + hash.length);
+            header.putInt(MAGIC).putInt(FORMAT).put(hash).putInt((int)crc.getValue());
+            try(OutputStream out = Files.newOutputStream(temporary)) {
+                out.write(header.array());
+                contents.writeTo(out);
+            }
+            Files.move(temporary, cache, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch(IOException | Failure error) {
+            try {
+                if(temporary != null) Files.deleteIfExists(temporary);
+            } catch(IOException ignored) {
+                // Nothing else to do
+            }
+        }
+    }
+
+    // Writing, where an IOException is carried out by a Failure
+
+    /**
+     * Carries an IOException out of the visitor methods, which can't
+     * throw it, up to save().
+     */
+    @SuppressWarnings("serial")
+    private static class Failure extends RuntimeException {
+        final IOException error;
+
+        Failure(IOException error) {
+            this.error = error;
+        }
+    }
+
+    private void writeByte(int value) {
+        try {
+            out.writeByte(value);
+        } catch(IOException error) {
+            throw new Failure(error);
+        }
+    }
+
+    private void writeBytes(byte[] bytes) {
+        try {
+            out.write(bytes);
+        } catch(IOException error) {
+            throw new Failure(error);
+        }
+    }
+
+    private void writeDouble(double value) {
+        try {
+            out.writeDouble(value);
+        } catch(IOException error) {
+            throw new Failure(error);
+        }
+    }
+
+    /**
+     * Unsigned variable-length int, 7 bits per byte.
+     */
+    private void writeInt(int value) {
+        while((value & ~0x7f) != 0) {
+            writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        writeByte(value);
+    }
+
+    /**
+     * Slots and depths, which are -1 when there is none.
+     */
+    private void writeIndex(int index) {
+        writeInt(index + 1);
+    }
+
+    private void writeBoolean(boolean value) {
+        writeByte(value ? 1 : 0);
+    }
+
+    private void writeString(String string) {
+        Integer index = written.get(string);
+        if(index != null) {
+            writeInt(index + 1);
+            return;
+        }
+        written.put(string, written.size());
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeInt(0);
+        writeInt(bytes.length);
+        writeBytes(bytes);
+    }
+
+    private void write(Token token) {
+        writeByte(token.type.ordinal());
+        writeString(token.lexeme);
+        writeInt(token.line);
+    }
+
+    /**
+     * The type and line of an operator, which is all its node keeps.
+     */
+    private void writeOperator(TokenType type, int line) {
+        writeByte(type.ordinal());
+        writeInt(line);
+    }
+
+    private void writeTokens(Token[] tokens) {
+        writeInt(tokens.length);
+        for(Token token : tokens) {
+            write(token);
+        }
+    }
+
+    private void write(Stmt stmt) {
+        if(stmt == null) {
+            writeByte(0);
+        } else {
+            stmt.accept(this);
+        }
+    }
+
+    private void write(Expr expr) {
+        if(expr == null) {
+            writeByte(0);
+        } else {
+            expr.accept(this);
+        }
+    }
+
+    private void writeStatements(List<? extends Stmt> statements) {
+        writeInt(statements.size());
+        for(Stmt statement : statements) {
+            write(statement);
+        }
+    }
+
+    private void writeExpressions(Expr[] expressions) {
+        writeInt(expressions.length);
+        for(Expr expr : expressions) {
+            write(expr);
+        }
+    }
+
+    @Override
+    public Void visitAssignExpr(Assign expr) {
+        writeByte(ASSIGN);
+        write(expr.name);
+        write(expr.value);
+        writeIndex(expr.depth);
+        writeIndex(expr.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Binary expr) {
+        writeByte(BINARY);
+        write(expr.left);
+        writeOperator(expr.operator, expr.line);
+        write(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Call expr) {
+        writeByte(CALL);
+        write(expr.callee);
+        writeInt(expr.line);
+        writeExpressions(expr.arguments);
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Get expr) {
+        writeByte(GET);
+        write(expr.object);
+        write(expr.name);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Grouping expr) {
+        writeByte(GROUPING);
+        write(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitInlineExpr(Inline expr) {
+        throw new IllegalStateException("Only the Optimizer creates Inline nodes.");
+    }
+
+    @Override
+    public Void visitInvokeExpr(Invoke expr) {
+        writeByte(INVOKE);
+        write(expr.object);
+        write(expr.name);
+        writeInt(expr.line);
+        writeExpressions(expr.arguments);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Literal expr) {
+        writeByte(LITERAL);
+        if(expr.value == null) {
+            writeByte(0);
+        } else if(expr.value instanceof Boolean) {
+            writeByte((boolean)expr.value ? 1 : 2);
+        } else if(expr.value instanceof Double) {
+            writeByte(3);
+            writeDouble((double)expr.value);
+        } else {
+            writeByte(4);
+            writeString((String)expr.value);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Logical expr) {
+        writeByte(LOGICAL);
+        write(expr.left);
+        writeOperator(expr.operator, expr.line);
+        write(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        writeByte(SET);
+        write(expr.object);
+        write(expr.name);
+        write(expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Super expr) {
+        writeByte(SUPER);
+        write(expr.keyword);
+        write(expr.method);
+        writeIndex(expr.depth);
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(This expr) {
+        writeByte(THIS);
+        write(expr.keyword);
+        writeIndex(expr.depth);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Unary expr) {
+        writeByte(UNARY);
+        writeOperator(expr.operator, expr.line);
+        write(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Variable expr) {
+        writeByte(VARIABLE);
+        write(expr.name);
+        writeIndex(expr.depth);
+        writeIndex(expr.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Block stmt) {
+        writeByte(BLOCK);
+        writeStatements(Arrays.asList(stmt.statements));
+        writeIndex(stmt.scopeSize);
+        writeBoolean(stmt.captured);
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Break stmt) {
+        writeByte(BREAK);
+        write(stmt.keyword);
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        writeByte(CLASS);
+        write(stmt.name);
+        write(stmt.superclass);
+        writeStatements(stmt.methods);
+        writeIndex(stmt.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitContinueStmt(Continue stmt) {
+        writeByte(CONTINUE);
+        write(stmt.keyword);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Expression stmt) {
+        writeByte(EXPRESSION);
+        write(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(For stmt) {
+        writeByte(FOR);
+        write(stmt.initializer);
+        write(stmt.condition);
+        write(stmt.increment);
+        write(stmt.body);
+        writeIndex(stmt.scopeSize);
+        writeBoolean(stmt.captured);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Function stmt) {
+        writeByte(FUNCTION);
+        write(stmt.name);
+        writeTokens(stmt.params);
+        writeStatements(stmt.body);
+        writeIndex(stmt.slot);
+        writeIndex(stmt.scopeSize);
+        writeBoolean(stmt.captured);
+        writeBoolean(stmt.isMethod);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(If stmt) {
+        writeByte(IF);
+        write(stmt.condition);
+        write(stmt.thenBranch);
+        write(stmt.elseBranch);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Print stmt) {
+        writeByte(PRINT);
+        write(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Return stmt) {
+        writeByte(RETURN);
+        write(stmt.keyword);
+        write(stmt.value);
+        writeBoolean(stmt.tail);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        writeByte(VAR);
+        write(stmt.name);
+        write(stmt.initializer);
+        writeIndex(stmt.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(While stmt) {
+        writeByte(WHILE);
+        write(stmt.condition);
+        write(stmt.body);
+        return null;
+    }
+
+    // Reading
+
+    private List<Stmt> readStatements() throws IOException {
+        int size = readInt();
+        List<Stmt> statements = new ArrayList<>(size);
+        for(int i = 0; i < size; i++) {
+            statements.add(readStmt());
+        }
+        return statements;
+    }
+
+    private Expr[] readExpressions() throws IOException {
+        Expr[] expressions = new Expr[readInt()];
+        for(int i = 0; i < expressions.length; i++) {
+            expressions[i] = readExpr();
+        }
+        return expressions;
+    }
+
+    private Expr readExpr() throws IOException {
+        int tag = in.readUnsignedByte();
+        switch(tag) {
+            case 0:
+                return null;
+            case ASSIGN: {
+                Assign expr = new Assign(readToken(), readExpr());
+                expr.depth = readIndex();
+                expr.slot = readIndex();
+                if(expr.depth == -1) expr.cell = globals.cell(expr.name.symbol);
+                return expr;
+            }
+            case BINARY:
+                return new Binary(readExpr(), readType(), readInt(), readExpr());
+            case CALL:
+                return new Call(readExpr(), readInt(), readExpressions());
+            case GET:
+                return new Get(readExpr(), readToken());
+            case GROUPING:
+                return new Grouping(readExpr());
+            case INVOKE:
+                return new Invoke(readExpr(), readToken(), readInt(), readExpressions());
+            case LITERAL:
+                return new Literal(readLiteral());
+            case LOGICAL:
+                return new Logical(readExpr(), readType(), readInt(), readExpr());
+            case SET:
+                return new Expr.Set(readExpr(), readToken(), readExpr());
+            case SUPER: {
+                Super expr = new Super(readToken(), readToken());
+                expr.depth = readIndex();
+                return expr;
+            }
+            case THIS: {
+                This expr = new This(readToken());
+                expr.depth = readIndex();
+                return expr;
+            }
+            case UNARY:
+                return new Unary(readType(), readInt(), readExpr());
+            case VARIABLE: {
+                Variable expr = new Variable(readToken());
+                expr.depth = readIndex();
+                expr.slot = readIndex();
+                if(expr.depth == -1) expr.cell = globals.cell(expr.name.symbol);
+                return expr;
+            }
+            default:
+                throw new IOException("Unknown expression " + tag + ".");
+        }
+    }
+
+    private Stmt readStmt() throws IOException {
+        int tag = in.readUnsignedByte();
+        switch(tag) {
+            case 0:
+                return null;
+            case BLOCK: {
+                Block stmt = new Block(readStatements().toArray(new Stmt[0]));
+                stmt.scopeSize = readIndex();
+                stmt.captured = in.readBoolean();
+                return stmt;
+            }
+            case BREAK:
+                return new Break(readToken());
+            case CLASS: {
+                Token name = readToken();
+                Variable superclass = (Variable)readExpr();
+                List<Function> methods = new ArrayList<>();
+                for(Stmt method : readStatements()) {
+                    methods.add((Function)method);
+                }
+                Stmt.Class stmt = new Stmt.Class(name, superclass, methods);
+                stmt.slot = readIndex();
+                return stmt;
+            }
+            case CONTINUE:
+                return new Continue(readToken());
+            case EXPRESSION:
+                return new Expression(readExpr());
+            case FOR: {
+                For stmt = new For(readStmt(), readExpr(), readStmt(), readStmt());
+                stmt.scopeSize = readIndex();
+                stmt.captured = in.readBoolean();
+                return stmt;
+            }
+            case FUNCTION: {
+                Function stmt = new Function(readToken(), readTokens(), readStatements());
+                stmt.slot = readIndex();
+                stmt.scopeSize = readIndex();
+                stmt.captured = in.readBoolean();
+                stmt.isMethod = in.readBoolean();
+                return stmt;
+            }
+            case IF:
+                return new If(readExpr(), readStmt(), readStmt());
+            case PRINT:
+                return new Print(readExpr());
+            case RETURN: {
+                Return stmt = new Return(readToken(), readExpr());
+                stmt.tail = in.readBoolean();
+                return stmt;
+            }
+            case VAR: {
+                Stmt.Var stmt = new Stmt.Var(readToken(), readExpr());
+                stmt.slot = readIndex();
+                return stmt;
+            }
+            case WHILE:
+                return new While(readExpr(), readStmt());
+            default:
+                throw new IOException("Unknown statement " + tag + ".");
+        }
+    }
+
+    private Object readLiteral() throws IOException {
+        int kind = in.readUnsignedByte();
+        switch(kind) {
+            case 0: return null;
+            case 1: return true;
+            case 2: return false;
+            case 3: return in.readDouble();
+            case 4: return readString();
+            default: throw new IOException("Unknown literal " + kind + ".");
+        }
+    }
+
+    private TokenType readType() throws IOException {
+        int ordinal = in.readUnsignedByte();
+        if(ordinal >= TYPES.length) throw new IOException("Unknown token " + ordinal + ".");
+        return TYPES[ordinal];
+    }
+
+    /**
+     * Makes the token again as the Scanner and TokenBuffer do, with its
+     * literal and Symbol.
+     */
+    private Token readToken() throws IOException {
+        TokenType type = readType();
+        String lexeme = readString();
+        int line = readInt();
+        switch(type) {
+            case IDENTIFIER:
+            case THIS:
+            case SUPER: {
+                Symbol symbol = Symbol.of(lexeme);
+                return new Token(type, symbol.name, null, line, symbol);
+            }
+            case STRING:
+                return new Token(type, lexeme, lexeme.substring(1, lexeme.length() - 1), line);
+            case NUMBER:
+                return new Token(type, lexeme, Double.parseDouble(lexeme), line);
+            default:
+                return new Token(type, lexeme, null, line);
+        }
+    }
+
+    private Token[] readTokens() throws IOException {
+        Token[] tokens = new Token[readInt()];
+        for(int i = 0; i < tokens.length; i++) {
+            tokens[i] = readToken();
+        }
+        return tokens;
+    }
+
+    private String readString() throws IOException {
+        int index = readInt();
+        if(index > 0) {
+            if(index > read.size()) throw new IOException("Unknown string " + index + ".");
+            return read.get(index - 1);
+        }
+        byte[] bytes = new byte[readInt()];
+        in.readFully(bytes);
+        String string = new String(bytes, StandardCharsets.UTF_8);
+        read.add(string);
+        return string;
+    }
+
+    private int readInt() throws IOException {
+        int value = 0;
+        for(int shift = 0; shift < 35; shift += 7) {
+            int part = in.readUnsignedByte();
+            value |= (part & 0x7f) << shift;
+            if((part & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed int.");
+    }
+
+    private int readIndex() throws IOException {
+        return readInt() - 1;
+    }
+}
\ No newline at end of file
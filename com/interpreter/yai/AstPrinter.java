@@ -7,6 +7,8 @@ import com.interpreter.yai.Expr.Binary;
 import com.interpreter.yai.Expr.Call;
 import com.interpreter.yai.Expr.Get;
 import com.interpreter.yai.Expr.Grouping;
+import com.interpreter.yai.Expr.Inline;
+import com.interpreter.yai.Expr.Invoke;
 import com.interpreter.yai.Expr.Literal;
 import com.interpreter.yai.Expr.Logical;
 import com.interpreter.yai.Expr.Set;
@@ -18,6 +20,7 @@ import com.interpreter.yai.Stmt.Block;
 import com.interpreter.yai.Stmt.Break;
 import com.interpreter.yai.Stmt.Continue;
 import com.interpreter.yai.Stmt.Expression;
+import com.interpreter.yai.Stmt.For;
 import com.interpreter.yai.Stmt.Function;
 import com.interpreter.yai.Stmt.If;
 import com.interpreter.yai.Stmt.Print;
@@ -80,7 +83,7 @@ class AstPrinter implements Expr.Visitor<String>, Stmt.Visitor<String> {
         StringBuilder stringBuilder = new StringBuilder();
         stringBuilder.append("(fun " + stmt.name.lexeme + "(");
         for(Token param : stmt.params) {
-            if(param != stmt.params.get(0)) {
+            if(param != stmt.params[0]) {
                 stringBuilder.append(", ");
             }
             stringBuilder.append(param.lexeme);
@@ -120,6 +123,15 @@ class AstPrinter implements Expr.Visitor<String>, Stmt.Visitor<String> {
         return parenthesize2("var", stmt.name, "=", stmt.initializer);
     }
 
+    @Override
+    public String visitForStmt(For stmt) {
+        return parenthesize2("for",
+            stmt.initializer == null ? ";" : stmt.initializer,
+            stmt.condition,
+            stmt.increment == null ? ";" : stmt.increment,
+            stmt.body);
+    }
+
     @Override
     public String visitWhileStmt(While stmt) {
         return parenthesize2("while", stmt.condition, stmt.body);
@@ -142,7 +154,7 @@ class AstPrinter implements Expr.Visitor<String>, Stmt.Visitor<String> {
 
     @Override
     public String visitBinaryExpr(Binary expr) {
-        return parenthesize(expr.operator.lexeme, expr.left, expr.right);
+        return parenthesize(TokenBuffer.lexemeOf(expr.operator), expr.left, expr.right);
     }
 
     @Override
@@ -155,6 +167,16 @@ class AstPrinter implements Expr.Visitor<String>, Stmt.Visitor<String> {
         return parenthesize2(".", expr.object, expr.name.lexeme);
     }
 
+    @Override
+    public String visitInlineExpr(Inline expr) {
+        return parenthesize2("inline", expr.function.name, expr.body);
+    }
+
+    @Override
+    public String visitInvokeExpr(Invoke expr) {
+        return parenthesize2("invoke", expr.object, expr.name.lexeme, expr.arguments);
+    }
+
     @Override
     public String visitGroupingExpr(Grouping expr) {
         return parenthesize("group", expr.expression);
@@ -170,7 +192,7 @@ class AstPrinter implements Expr.Visitor<String>, Stmt.Visitor<String> {
 
     @Override
     public String visitLogicalExpr(Logical expr) {
-        return parenthesize(expr.operator.lexeme, expr.left, expr.right);
+        return parenthesize(TokenBuffer.lexemeOf(expr.operator), expr.left, expr.right);
     }
 
     @Override
@@ -190,7 +212,7 @@ class AstPrinter implements Expr.Visitor<String>, Stmt.Visitor<String> {
 
     @Override
     public String visitUnaryExpr(Unary expr) {
-        return parenthesize(expr.operator.lexeme, expr.right);
+        return parenthesize(TokenBuffer.lexemeOf(expr.operator), expr.right);
     }
 
     @Override
@@ -222,6 +244,13 @@ class AstPrinter implements Expr.Visitor<String>, Stmt.Visitor<String> {
                 stringBuilder.append(((Stmt)part).accept(this));
             } else if(part instanceof Token) {
                 stringBuilder.append(((Token)part).lexeme);
+            } else if(part instanceof Expr[]) {
+                // Arguments of a call
+                String separator = "";
+                for(Expr expr : (Expr[])part) {
+                    stringBuilder.append(separator).append(expr.accept(this));
+                    separator = " ";
+                }
             } else {
                 stringBuilder.append(part);
             }
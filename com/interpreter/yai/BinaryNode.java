@@ -0,0 +1,255 @@
+package com.interpreter.yai;
+
+/**
+ * Self-specializing implementation of a binary operator, used when the
+ * Interpreter runs with "--specialize".
+ *
+ * Every Expr.Binary starts without a node. Its first evaluation installs
+ * the node specialized for the operand types it saw, which evaluates the
+ * operands itself. The number nodes use Interpreter.evaluateDouble(), so
+ * nested arithmetic and comparisons run on unboxed doubles. On a type miss
+ * the node rewrites the expression to the generic node, which runs the
+ * Interpreter's usual code and never specializes again.
+ *
+ * Besides execute(), nodes can return their result unboxed. These methods
+ * throw UnexpectedType with the boxed result when it doesn't have the
+ * requested type.
+ */
+abstract class BinaryNode {
+    private static final BinaryNode DOUBLE_ADD = new DoubleAdd();
+    private static final BinaryNode DOUBLE_SUBTRACT = new DoubleSubtract();
+    private static final BinaryNode DOUBLE_MULTIPLY = new DoubleMultiply();
+    private static final BinaryNode DOUBLE_DIVIDE = new DoubleDivide();
+    private static final BinaryNode DOUBLE_LESS = new DoubleLess();
+    private static final BinaryNode DOUBLE_LESS_EQUAL = new DoubleLessEqual();
+    private static final BinaryNode DOUBLE_GREATER = new DoubleGreater();
+    private static final BinaryNode DOUBLE_GREATER_EQUAL = new DoubleGreaterEqual();
+    private static final BinaryNode DOUBLE_EQUAL = new DoubleEqual(false);
+    private static final BinaryNode DOUBLE_NOT_EQUAL = new DoubleEqual(true);
+    private static final BinaryNode STRING_CONCAT = new StringConcat();
+    private static final BinaryNode GENERIC = new Generic();
+
+    abstract Object execute(Interpreter interpreter, Expr.Binary expr);
+
+    double executeDouble(Interpreter interpreter, Expr.Binary expr) {
+        return expectDouble(execute(interpreter, expr));
+    }
+
+    boolean executeBoolean(Interpreter interpreter, Expr.Binary expr) {
+        return expectBoolean(execute(interpreter, expr));
+    }
+
+    /**
+     * Whether the node's result is speculated to be a number.
+     */
+    boolean producesDouble() {
+        return false;
+    }
+
+    /**
+     * Picks the node for the types of the first operands seen by "expr".
+     */
+    static BinaryNode specialize(Expr.Binary expr, Object left, Object right) {
+        TokenType operator = expr.operator;
+        if(left instanceof Double && right instanceof Double) {
+            switch(operator) {
+                case PLUS: return DOUBLE_ADD;
+                case MINUS: return DOUBLE_SUBTRACT;
+                case STAR: return DOUBLE_MULTIPLY;
+                case SLASH: return DOUBLE_DIVIDE;
+                case LESS: return DOUBLE_LESS;
+                case LESS_EQUAL: return DOUBLE_LESS_EQUAL;
+                case GREATER: return DOUBLE_GREATER;
+                case GREATER_EQUAL: return DOUBLE_GREATER_EQUAL;
+                case EQUAL_EQUAL: return DOUBLE_EQUAL;
+                case BANG_EQUAL: return DOUBLE_NOT_EQUAL;
+                default: break;
+            }
+        }
+        if(operator == TokenType.PLUS && left instanceof CharSequence
+                && right instanceof CharSequence) {
+            return STRING_CONCAT;
+        }
+        return GENERIC;
+    }
+
+    /**
+     * Called by a specialized node on a type miss, with both operands
+     * already evaluated.
+     */
+    static Object deoptimize(Expr.Binary expr, Object left, Object right) {
+        expr.node = GENERIC;
+        return Interpreter.binary(expr.operator, expr.line, left, right);
+    }
+
+    static double expectDouble(Object value) {
+        if(value instanceof Double) return (double)value;
+        throw new UnexpectedType(value);
+    }
+
+    static boolean expectBoolean(Object value) {
+        if(value instanceof Boolean) return (boolean)value;
+        throw new UnexpectedType(value);
+    }
+
+    private abstract static class DoubleArithmetic extends BinaryNode {
+        abstract double apply(double left, double right);
+
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr) {
+            try {
+                return executeDouble(interpreter, expr);
+            } catch(UnexpectedType unexpected) {
+                return unexpected.value;
+            }
+        }
+
+        @Override
+        double executeDouble(Interpreter interpreter, Expr.Binary expr) {
+            double left;
+            try {
+                left = interpreter.evaluateDouble(expr.left);
+            } catch(UnexpectedType unexpected) {
+                Object right = interpreter.evaluate(expr.right);
+                return expectDouble(deoptimize(expr, unexpected.value, right));
+            }
+            double right;
+            try {
+                right = interpreter.evaluateDouble(expr.right);
+            } catch(UnexpectedType unexpected) {
+                return expectDouble(deoptimize(expr, left, unexpected.value));
+            }
+            return apply(left, right);
+        }
+
+        @Override
+        boolean producesDouble() {
+            return true;
+        }
+    }
+
+    private abstract static class DoubleComparison extends BinaryNode {
+        abstract boolean apply(double left, double right);
+
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr) {
+            try {
+                return executeBoolean(interpreter, expr);
+            } catch(UnexpectedType unexpected) {
+                return unexpected.value;
+            }
+        }
+
+        @Override
+        boolean executeBoolean(Interpreter interpreter, Expr.Binary expr) {
+            double left;
+            try {
+                left = interpreter.evaluateDouble(expr.left);
+            } catch(UnexpectedType unexpected) {
+                Object right = interpreter.evaluate(expr.right);
+                return expectBoolean(deoptimize(expr, unexpected.value, right));
+            }
+            double right;
+            try {
+                right = interpreter.evaluateDouble(expr.right);
+            } catch(UnexpectedType unexpected) {
+                return expectBoolean(deoptimize(expr, left, unexpected.value));
+            }
+            return apply(left, right);
+        }
+    }
+
+    private static final class DoubleAdd extends DoubleArithmetic {
+        @Override
+        double apply(double left, double right) {
+            return left + right;
+        }
+    }
+
+    private static final class DoubleSubtract extends DoubleArithmetic {
+        @Override
+        double apply(double left, double right) {
+            return left - right;
+        }
+    }
+
+    private static final class DoubleMultiply extends DoubleArithmetic {
+        @Override
+        double apply(double left, double right) {
+            return left * right;
+        }
+    }
+
+    private static final class DoubleDivide extends DoubleArithmetic {
+        @Override
+        double apply(double left, double right) {
+            return left / right;
+        }
+    }
+
+    private static final class DoubleLess extends DoubleComparison {
+        @Override
+        boolean apply(double left, double right) {
+            return left < right;
+        }
+    }
+
+    private static final class DoubleLessEqual extends DoubleComparison {
+        @Override
+        boolean apply(double left, double right) {
+            return left <= right;
+        }
+    }
+
+    private static final class DoubleGreater extends DoubleComparison {
+        @Override
+        boolean apply(double left, double right) {
+            return left > right;
+        }
+    }
+
+    private static final class DoubleGreaterEqual extends DoubleComparison {
+        @Override
+        boolean apply(double left, double right) {
+            return left >= right;
+        }
+    }
+
+    private static final class DoubleEqual extends DoubleComparison {
+        private final boolean negate;
+
+        DoubleEqual(boolean negate) {
+            this.negate = negate;
+        }
+
+        @Override
+        boolean apply(double left, double right) {
+            // Same as Double.equals(), 0 and -0 differ, except that NaN is
+            // never equal to itself
+            boolean equal = left == left
+                && Double.doubleToLongBits(left) == Double.doubleToLongBits(right);
+            return equal != negate;
+        }
+    }
+
+    private static final class StringConcat extends BinaryNode {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr) {
+            Object left = interpreter.evaluate(expr.left);
+            Object right = interpreter.evaluate(expr.right);
+            if(left instanceof CharSequence && right instanceof CharSequence) {
+                return Rope.concat((CharSequence)left, (CharSequence)right);
+            }
+            return deoptimize(expr, left, right);
+        }
+    }
+
+    private static final class Generic extends BinaryNode {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr) {
+            Object left = interpreter.evaluate(expr.left);
+            Object right = interpreter.evaluate(expr.right);
+            return Interpreter.binary(expr.operator, expr.line, left, right);
+        }
+    }
+}
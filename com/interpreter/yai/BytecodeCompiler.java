@@ -0,0 +1,814 @@
+package com.interpreter.yai;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.interpreter.yai.Expr.Assign;
+import com.interpreter.yai.Expr.Binary;
+import com.interpreter.yai.Expr.Call;
+import com.interpreter.yai.Expr.Get;
+import com.interpreter.yai.Expr.Grouping;
+import com.interpreter.yai.Expr.Inline;
+import com.interpreter.yai.Expr.Invoke;
+import com.interpreter.yai.Expr.Literal;
+import com.interpreter.yai.Expr.Logical;
+import com.interpreter.yai.Expr.Set;
+import com.interpreter.yai.Expr.Super;
+import com.interpreter.yai.Expr.This;
+import com.interpreter.yai.Expr.Unary;
+import com.interpreter.yai.Expr.Variable;
+import com.interpreter.yai.Stmt.Block;
+import com.interpreter.yai.Stmt.Break;
+import com.interpreter.yai.Stmt.Continue;
+import com.interpreter.yai.Stmt.Expression;
+import com.interpreter.yai.Stmt.For;
+import com.interpreter.yai.Stmt.Function;
+import com.interpreter.yai.Stmt.If;
+import com.interpreter.yai.Stmt.Print;
+import com.interpreter.yai.Stmt.Var;
+import com.interpreter.yai.Stmt.While;
+
+/**
+ * Compiles the resolved AST into bytecode for the VM.
+ *
+ * Locals live in VM stack slots instead of Environments and variables
+ * captured by closures are reached through upvalues. The Resolver has
+ * already reported every semantic error, so only the limits of the
+ * bytecode format are checked here.
+ */
+class BytecodeCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private static final int MAX_SHORT = 0xffff;
+    // Slots for the few values a statement itself keeps on the stack
+    private static final int STACK_MARGIN = 8;
+
+    private enum FunctionType {
+        SCRIPT,
+        FUNCTION,
+        INITIALIZER,
+        METHOD
+    }
+
+    private static class Local {
+        final String name;
+        final int depth;
+        boolean isCaptured = false;
+
+        Local(String name, int depth) {
+            this.name = name;
+            this.depth = depth;
+        }
+    }
+
+    private static class Upvalue {
+        final int index;
+        final boolean isLocal;
+
+        Upvalue(int index, boolean isLocal) {
+            this.index = index;
+            this.isLocal = isLocal;
+        }
+    }
+
+    private static class Loop {
+        final Loop enclosing;
+        // Locals declared outside of the loop
+        final int localCount;
+        final List<Integer> breakJumps = new ArrayList<>();
+        final List<Integer> continueJumps = new ArrayList<>();
+
+        Loop(Loop enclosing, int localCount) {
+            this.enclosing = enclosing;
+            this.localCount = localCount;
+        }
+    }
+
+    private static class FunctionState {
+        final FunctionState enclosing;
+        final VmFunction function;
+        final FunctionType type;
+        final List<Local> locals = new ArrayList<>();
+        final List<Upvalue> upvalues = new ArrayList<>();
+        int scopeDepth = 0;
+        int stackDepth = 0;
+        Loop loop = null;
+
+        FunctionState(FunctionState enclosing, VmFunction function, FunctionType type) {
+            this.enclosing = enclosing;
+            this.function = function;
+            this.type = type;
+        }
+    }
+
+    private final VM vm;
+    private FunctionState current;
+    private int line = 1;
+
+    BytecodeCompiler(VM vm) {
+        this.vm = vm;
+    }
+
+    VmFunction compile(List<Stmt> statements) {
+        current = new FunctionState(null, new VmFunction("script", 0), FunctionType.SCRIPT);
+        // Slot zero holds the function being called
+        current.locals.add(new Local("", 0));
+
+        for(Stmt statement : statements) {
+            compile(statement);
+        }
+        emitReturn();
+        return endFunction();
+    }
+
+    @Override
+    public Void visitBlockStmt(Block stmt) {
+        beginScope();
+        for(Stmt statement : stmt.statements) {
+            compile(statement);
+        }
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Break stmt) {
+        line = stmt.keyword.line;
+        Loop loop = current.loop;
+        if(loop == null) {
+            // Not inside a loop of this function, the VM unwinds to
+            // whatever loop is running in one of the callers.
+            emit(OpCode.BREAK);
+            return null;
+        }
+        discardLocals(loop.localCount);
+        loop.breakJumps.add(emitJump(OpCode.JUMP));
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        line = stmt.name.line;
+        boolean isGlobal = current.scopeDepth == 0;
+
+        if(!isGlobal) addLocal(stmt.name.lexeme);
+        emitShort(OpCode.CLASS, identifierConstant(stmt.name));
+        if(isGlobal) emitShort(OpCode.DEFINE_GLOBAL, globalSlot(stmt.name));
+
+        if(stmt.superclass != null) {
+            beginScope();
+            visitVariableExpr(stmt.superclass);
+            addLocal("super");
+
+            loadVariable(stmt.name, isGlobal);
+            line = stmt.superclass.name.line;
+            emit(OpCode.INHERIT);
+        }
+
+        loadVariable(stmt.name, isGlobal);
+        for(Stmt.Function method : stmt.methods) {
+            FunctionType type = FunctionType.METHOD;
+            if(method.name.lexeme.equals("init")) {
+                type = FunctionType.INITIALIZER;
+            }
+            function(method, type);
+            emitShort(OpCode.METHOD, identifierConstant(method.name));
+        }
+        emit(OpCode.POP);
+
+        if(stmt.superclass != null) {
+            endScope();
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitContinueStmt(Continue stmt) {
+        line = stmt.keyword.line;
+        Loop loop = current.loop;
+        if(loop == null) {
+            emit(OpCode.CONTINUE);
+            return null;
+        }
+        discardLocals(loop.localCount);
+        loop.continueJumps.add(emitJump(OpCode.JUMP));
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Expression stmt) {
+        if(stmt.expression instanceof Assign) {
+            // The value of the assignment is not needed, store and pop it
+            Assign assign = (Assign)stmt.expression;
+            compile(assign.value);
+            storeVariable(assign.name, assign.depth == -1, true);
+            return null;
+        }
+        compile(stmt.expression);
+        emit(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Function stmt) {
+        line = stmt.name.line;
+        if(current.scopeDepth == 0) {
+            function(stmt, FunctionType.FUNCTION);
+            emitShort(OpCode.DEFINE_GLOBAL, globalSlot(stmt.name));
+        } else {
+            // Declared first so that the function can refer to itself
+            addLocal(stmt.name.lexeme);
+            function(stmt, FunctionType.FUNCTION);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(If stmt) {
+        int thenJump = emitConditionJump(stmt.condition);
+        compile(stmt.thenBranch);
+
+        int elseJump = emitJump(OpCode.JUMP);
+        patchJump(thenJump);
+        if(stmt.elseBranch != null) {
+            compile(stmt.elseBranch);
+        }
+        patchJump(elseJump);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Print stmt) {
+        compile(stmt.expression);
+        emit(OpCode.PRINT);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        line = stmt.keyword.line;
+        if(stmt.value == null) {
+            emitReturn();
+        } else {
+            compile(stmt.value);
+            emit(OpCode.RETURN);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Var stmt) {
+        if(stmt.initializer != null) {
+            compile(stmt.initializer);
+        } else {
+            emit(OpCode.NIL);
+        }
+
+        line = stmt.name.line;
+        if(current.scopeDepth == 0) {
+            emitShort(OpCode.DEFINE_GLOBAL, globalSlot(stmt.name));
+        } else {
+            // The value just pushed becomes the variable's slot
+            addLocal(stmt.name.lexeme);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(While stmt) {
+        loop(stmt.condition, stmt.body, null);
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(For stmt) {
+        // The initializer's local lives until the end of the loop
+        beginScope();
+        if(stmt.initializer != null) {
+            compile(stmt.initializer);
+        }
+        loop(stmt.condition, stmt.body, stmt.increment);
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Assign expr) {
+        compile(expr.value);
+        storeVariable(expr.name, expr.depth == -1, false);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Binary expr) {
+        compile(expr.left);
+        if(expr.right instanceof Literal && ((Literal)expr.right).value instanceof Double
+                && (expr.operator == TokenType.PLUS || expr.operator == TokenType.MINUS)) {
+            int constant = makeConstant(((Literal)expr.right).value);
+            line = expr.line;
+            emitShort(expr.operator == TokenType.PLUS
+                ? OpCode.ADD_CONSTANT : OpCode.SUBTRACT_CONSTANT, constant);
+            return null;
+        }
+        compile(expr.right);
+
+        line = expr.line;
+        switch(expr.operator) {
+            case BANG_EQUAL: emit(OpCode.NOT_EQUAL); break;
+            case EQUAL_EQUAL: emit(OpCode.EQUAL); break;
+            case GREATER: emit(OpCode.GREATER); break;
+            case GREATER_EQUAL: emit(OpCode.GREATER_EQUAL); break;
+            case LESS: emit(OpCode.LESS); break;
+            case LESS_EQUAL: emit(OpCode.LESS_EQUAL); break;
+            case PLUS: emit(OpCode.ADD); break;
+            case MINUS: emit(OpCode.SUBTRACT); break;
+            case STAR: emit(OpCode.MULTIPLY); break;
+            case SLASH: emit(OpCode.DIVIDE); break;
+            // Unreachable
+            default: break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Call expr) {
+        compile(expr.callee);
+        for(Expr argument : expr.arguments) {
+            compile(argument);
+        }
+        line = expr.line;
+        emitByte(OpCode.CALL);
+        emitByte(expr.arguments.length);
+        current.stackDepth -= expr.arguments.length;
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Get expr) {
+        compile(expr.object);
+        line = expr.name.line;
+        emitShort(OpCode.GET_PROPERTY, identifierConstant(expr.name));
+        return null;
+    }
+
+    @Override
+    public Void visitInlineExpr(Inline expr) {
+        // The VM always makes the call
+        compile(expr.call);
+        return null;
+    }
+
+    @Override
+    public Void visitInvokeExpr(Invoke expr) {
+        compile(expr.object);
+        line = expr.name.line;
+        emitShort(OpCode.GET_PROPERTY, identifierConstant(expr.name));
+        for(Expr argument : expr.arguments) {
+            compile(argument);
+        }
+        line = expr.line;
+        emitByte(OpCode.CALL);
+        emitByte(expr.arguments.length);
+        current.stackDepth -= expr.arguments.length;
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Grouping expr) {
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Literal expr) {
+        if(expr.value == null) {
+            emit(OpCode.NIL);
+        } else if(expr.value.equals(true)) {
+            emit(OpCode.TRUE);
+        } else if(expr.value.equals(false)) {
+            emit(OpCode.FALSE);
+        } else {
+            emitShort(OpCode.CONSTANT, makeConstant(expr.value));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Logical expr) {
+        compile(expr.left);
+        int endJump = emitJump(expr.operator == TokenType.OR
+            ? OpCode.JUMP_IF_TRUE : OpCode.JUMP_IF_FALSE);
+        emit(OpCode.POP);
+        compile(expr.right);
+        patchJump(endJump);
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Set expr) {
+        compile(expr.object);
+        compile(expr.value);
+        line = expr.name.line;
+        emitShort(OpCode.SET_PROPERTY, identifierConstant(expr.name));
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Super expr) {
+        line = expr.keyword.line;
+        loadVariable("this");
+        loadVariable("super");
+        line = expr.method.line;
+        emitShort(OpCode.GET_SUPER, identifierConstant(expr.method));
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(This expr) {
+        line = expr.keyword.line;
+        loadVariable("this");
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Unary expr) {
+        compile(expr.right);
+        line = expr.line;
+        if(expr.operator == TokenType.BANG) {
+            emit(OpCode.NOT);
+        } else {
+            emit(OpCode.NEGATE);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Variable expr) {
+        loadVariable(expr.name, expr.depth == -1);
+        return null;
+    }
+
+    private void compile(Stmt stmt) {
+        // Between statements only the locals are on the stack
+        current.stackDepth = current.locals.size();
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    private void function(Stmt.Function stmt, FunctionType type) {
+        FunctionState state = new FunctionState(current,
+            new VmFunction(stmt.name.lexeme, stmt.params.length), type);
+        current = state;
+
+        // Methods find their receiver in slot zero
+        boolean isMethod = type == FunctionType.METHOD || type == FunctionType.INITIALIZER;
+        current.locals.add(new Local(isMethod ? "this" : "", 0));
+        beginScope();
+        for(Token param : stmt.params) {
+            addLocal(param.lexeme);
+        }
+        for(Stmt statement : stmt.body) {
+            compile(statement);
+        }
+        line = stmt.name.line;
+        emitReturn();
+
+        VmFunction function = endFunction();
+        current = state.enclosing;
+
+        line = stmt.name.line;
+        emitShort(OpCode.CLOSURE, makeConstant(function));
+        for(Upvalue upvalue : state.upvalues) {
+            emitByte(upvalue.isLocal ? 1 : 0);
+            emitByte((upvalue.index >> 8) & 0xff);
+            emitByte(upvalue.index & 0xff);
+        }
+    }
+
+    private VmFunction endFunction() {
+        VmFunction function = current.function;
+        function.upvalueCount = current.upvalues.size();
+        function.maxStack += STACK_MARGIN;
+        return function;
+    }
+
+    private void emitReturn() {
+        if(current.type == FunctionType.INITIALIZER) {
+            emitShort(OpCode.GET_LOCAL, 0);
+        } else {
+            emit(OpCode.NIL);
+        }
+        emit(OpCode.RETURN);
+    }
+
+    private void loadVariable(String name) {
+        loadVariable(new Token(TokenType.IDENTIFIER, name, null, line), false);
+    }
+
+    private void loadVariable(Token name, boolean isGlobal) {
+        line = name.line;
+        if(!isGlobal) {
+            int slot = resolveLocal(current, name.lexeme);
+            if(slot != -1) {
+                emitShort(OpCode.GET_LOCAL, slot);
+                return;
+            }
+            int upvalue = resolveUpvalue(current, name.lexeme);
+            if(upvalue != -1) {
+                emitShort(OpCode.GET_UPVALUE, upvalue);
+                return;
+            }
+        }
+        emitShort(OpCode.GET_GLOBAL, globalSlot(name));
+    }
+
+    /**
+     * With "pop" the value is not left on the stack, for assignments whose
+     * value is not used.
+     */
+    private void storeVariable(Token name, boolean isGlobal, boolean pop) {
+        line = name.line;
+        if(!isGlobal) {
+            int slot = resolveLocal(current, name.lexeme);
+            if(slot != -1) {
+                emitShort(pop ? OpCode.STORE_LOCAL : OpCode.SET_LOCAL, slot);
+                return;
+            }
+            int upvalue = resolveUpvalue(current, name.lexeme);
+            if(upvalue != -1) {
+                emitShort(pop ? OpCode.STORE_UPVALUE : OpCode.SET_UPVALUE, upvalue);
+                return;
+            }
+        }
+        emitShort(pop ? OpCode.STORE_GLOBAL : OpCode.SET_GLOBAL, globalSlot(name));
+    }
+
+    private int resolveLocal(FunctionState state, String name) {
+        for(int i = state.locals.size() - 1; i >= 0; i--) {
+            if(state.locals.get(i).name.equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int resolveUpvalue(FunctionState state, String name) {
+        if(state.enclosing == null) return -1;
+
+        int local = resolveLocal(state.enclosing, name);
+        if(local != -1) {
+            state.enclosing.locals.get(local).isCaptured = true;
+            return addUpvalue(state, local, true);
+        }
+
+        int upvalue = resolveUpvalue(state.enclosing, name);
+        if(upvalue != -1) {
+            return addUpvalue(state, upvalue, false);
+        }
+        return -1;
+    }
+
+    private int addUpvalue(FunctionState state, int index, boolean isLocal) {
+        for(int i = 0; i < state.upvalues.size(); i++) {
+            Upvalue upvalue = state.upvalues.get(i);
+            if(upvalue.index == index && upvalue.isLocal == isLocal) {
+                return i;
+            }
+        }
+        if(state.upvalues.size() > MAX_SHORT) {
+            Yai.error(line, "Too many closure variables in function.");
+            return 0;
+        }
+        state.upvalues.add(new Upvalue(index, isLocal));
+        return state.upvalues.size() - 1;
+    }
+
+    private void addLocal(String name) {
+        if(current.locals.size() > MAX_SHORT) {
+            Yai.error(line, "Too many local variables in function.");
+            return;
+        }
+        current.locals.add(new Local(name, current.scopeDepth));
+    }
+
+    /**
+     * A "continue" jumps to the increment, the body falls through to it.
+     */
+    private void loop(Expr condition, Stmt body, Stmt increment) {
+        Chunk chunk = current.function.chunk;
+        int enter = chunk.count;
+        emit(OpCode.LOOP_ENTER);
+        emitByte(0xff);
+        emitByte(0xff);
+        emitByte(0xff);
+        emitByte(0xff);
+        int afterEnter = chunk.count;
+
+        Loop loop = new Loop(current.loop, current.locals.size());
+        current.loop = loop;
+
+        int loopStart = chunk.count;
+        int exitJump = emitConditionJump(condition);
+        compile(body);
+
+        current.loop = loop.enclosing;
+
+        int continueTarget = chunk.count;
+        for(int jump : loop.continueJumps) {
+            patchJump(jump);
+        }
+        if(increment != null) {
+            compile(increment);
+        }
+        emitLoop(loopStart);
+
+        patchJump(exitJump);
+
+        int breakTarget = chunk.count;
+        for(int jump : loop.breakJumps) {
+            patchJump(jump);
+        }
+        emit(OpCode.LOOP_EXIT);
+
+        patchOffset(enter + 1, breakTarget - afterEnter);
+        patchOffset(enter + 3, continueTarget - afterEnter);
+    }
+
+    private void beginScope() {
+        current.scopeDepth++;
+    }
+
+    private void endScope() {
+        current.scopeDepth--;
+        List<Local> locals = current.locals;
+        while(!locals.isEmpty() && locals.get(locals.size() - 1).depth > current.scopeDepth) {
+            Local local = locals.remove(locals.size() - 1);
+            emit(local.isCaptured ? OpCode.CLOSE_UPVALUE : OpCode.POP);
+        }
+    }
+
+    /**
+     * Pops the locals declared after the first "count" ones without
+     * forgetting them, for jumps out of a scope that stays open.
+     */
+    private void discardLocals(int count) {
+        List<Local> locals = current.locals;
+        for(int i = locals.size() - 1; i >= count; i--) {
+            emit(locals.get(i).isCaptured ? OpCode.CLOSE_UPVALUE : OpCode.POP);
+        }
+    }
+
+    private int identifierConstant(Token name) {
+        return makeConstant(name.lexeme);
+    }
+
+    /**
+     * The slot of a global in the VM, which outlives this compiler so that
+     * every line at the prompt refers to the same globals.
+     */
+    private int globalSlot(Token name) {
+        int slot = vm.globalSlot(name.lexeme);
+        if(slot > MAX_SHORT) {
+            Yai.error(line, "Too many global variables.");
+            return 0;
+        }
+        return slot;
+    }
+
+    private int makeConstant(Object value) {
+        int index = current.function.chunk.addConstant(value);
+        if(index > MAX_SHORT) {
+            Yai.error(line, "Too many constants in one chunk.");
+            return 0;
+        }
+        return index;
+    }
+
+    /**
+     * Compiles "condition" followed by a jump taken when it is false, and
+     * returns the offset of the jump to patch. A comparison jumps on its
+     * operands without pushing a Boolean first.
+     */
+    private int emitConditionJump(Expr condition) {
+        if(condition instanceof Binary) {
+            Binary binary = (Binary)condition;
+            byte op = -1;
+            switch(binary.operator) {
+                case GREATER: op = OpCode.JUMP_IF_NOT_GREATER; break;
+                case GREATER_EQUAL: op = OpCode.JUMP_IF_NOT_GREATER_EQUAL; break;
+                case LESS: op = OpCode.JUMP_IF_NOT_LESS; break;
+                case LESS_EQUAL: op = OpCode.JUMP_IF_NOT_LESS_EQUAL; break;
+                default: break;
+            }
+            if(op != -1) {
+                compile(binary.left);
+                compile(binary.right);
+                line = binary.line;
+                return emitJump(op);
+            }
+        }
+        compile(condition);
+        return emitJump(OpCode.POP_JUMP_IF_FALSE);
+    }
+
+    private int emitJump(byte op) {
+        emit(op);
+        emitByte(0xff);
+        emitByte(0xff);
+        return current.function.chunk.count - 2;
+    }
+
+    private void patchJump(int offset) {
+        // -2 to adjust for the bytecode of the jump offset itself
+        patchOffset(offset, current.function.chunk.count - offset - 2);
+    }
+
+    private void patchOffset(int offset, int jump) {
+        if(jump > MAX_SHORT) {
+            Yai.error(line, "Too much code to jump over.");
+        }
+        byte[] code = current.function.chunk.code;
+        code[offset] = (byte)((jump >> 8) & 0xff);
+        code[offset + 1] = (byte)(jump & 0xff);
+    }
+
+    private void emitLoop(int loopStart) {
+        emit(OpCode.LOOP);
+        int offset = current.function.chunk.count - loopStart + 2;
+        if(offset > MAX_SHORT) {
+            Yai.error(line, "Loop body too large.");
+        }
+        emitByte((offset >> 8) & 0xff);
+        emitByte(offset & 0xff);
+    }
+
+    private void emitShort(byte op, int operand) {
+        emit(op);
+        emitByte((operand >> 8) & 0xff);
+        emitByte(operand & 0xff);
+    }
+
+    private void emit(byte op) {
+        emitByte(op);
+
+        current.stackDepth += stackEffect(op);
+        if(current.stackDepth > current.function.maxStack) {
+            current.function.maxStack = current.stackDepth;
+        }
+    }
+
+    private void emitByte(int value) {
+        current.function.chunk.write(value, line);
+    }
+
+    /**
+     * How many values the instruction leaves on the stack, used to find
+     * out how big a call frame can get. CALL is accounted for by the caller.
+     */
+    private static int stackEffect(byte op) {
+        switch(op) {
+            case OpCode.CONSTANT:
+            case OpCode.NIL:
+            case OpCode.TRUE:
+            case OpCode.FALSE:
+            case OpCode.GET_LOCAL:
+            case OpCode.GET_GLOBAL:
+            case OpCode.GET_UPVALUE:
+            case OpCode.CLOSURE:
+            case OpCode.CLASS:
+                return 1;
+            case OpCode.POP:
+            case OpCode.DEFINE_GLOBAL:
+            case OpCode.SET_PROPERTY:
+            case OpCode.GET_SUPER:
+            case OpCode.EQUAL:
+            case OpCode.NOT_EQUAL:
+            case OpCode.GREATER:
+            case OpCode.GREATER_EQUAL:
+            case OpCode.LESS:
+            case OpCode.LESS_EQUAL:
+            case OpCode.ADD:
+            case OpCode.SUBTRACT:
+            case OpCode.MULTIPLY:
+            case OpCode.DIVIDE:
+            case OpCode.PRINT:
+            case OpCode.CLOSE_UPVALUE:
+            case OpCode.RETURN:
+            case OpCode.INHERIT:
+            case OpCode.METHOD:
+            case OpCode.POP_JUMP_IF_FALSE:
+            case OpCode.STORE_LOCAL:
+            case OpCode.STORE_GLOBAL:
+            case OpCode.STORE_UPVALUE:
+                return -1;
+            case OpCode.JUMP_IF_NOT_GREATER:
+            case OpCode.JUMP_IF_NOT_GREATER_EQUAL:
+            case OpCode.JUMP_IF_NOT_LESS:
+            case OpCode.JUMP_IF_NOT_LESS_EQUAL:
+                return -2;
+            default:
+                return 0;
+        }
+    }
+}
\ No newline at end of file
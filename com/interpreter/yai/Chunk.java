@@ -0,0 +1,47 @@
+package com.interpreter.yai;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A sequence of bytecode along with its constant pool and the source
+ * line of every byte, used to report runtime errors.
+ */
+class Chunk {
+    byte[] code = new byte[64];
+    int[] lines = new int[64];
+    int count = 0;
+
+    Object[] constants = new Object[16];
+    int constantCount = 0;
+    private final Map<Object, Integer> constantIndices = new HashMap<>();
+
+    void write(int value, int line) {
+        if(count == code.length) {
+            code = Arrays.copyOf(code, count * 2);
+            lines = Arrays.copyOf(lines, count * 2);
+        }
+        code[count] = (byte)value;
+        lines[count] = line;
+        ++count;
+    }
+
+    /**
+     * Returns the index of the value in the constant pool, adding it only
+     * if an equal constant is not already there.
+     */
+    int addConstant(Object value) {
+        // Functions are never equal to each other, no need to look them up
+        if(!(value instanceof VmFunction)) {
+            Integer index = constantIndices.get(value);
+            if(index != null) return index;
+            constantIndices.put(value, constantCount);
+        }
+        if(constantCount == constants.length) {
+            constants = Arrays.copyOf(constants, constantCount * 2);
+        }
+        constants[constantCount] = value;
+        return constantCount++;
+    }
+}
\ No newline at end of file
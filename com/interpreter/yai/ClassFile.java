@@ -0,0 +1,501 @@
+package com.interpreter.yai;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough of a JVM classfile writer for the Jit.
+ *
+ * Classes are written with version 49 (Java 5), which is still verified by
+ * type inference, so no StackMapTable frames have to be computed. Every
+ * value the Jit deals with is a reference, which keeps the stack and local
+ * accounting down to one slot per value.
+ */
+class ClassFile {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    // Opcodes used by the Jit
+    static final int ACONST_NULL = 0x01;
+    static final int ICONST_0 = 0x03;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC = 0x12;
+    static final int LDC_W = 0x13;
+    static final int ALOAD = 0x19;
+    static final int AALOAD = 0x32;
+    static final int ASTORE = 0x3a;
+    static final int AASTORE = 0x53;
+    static final int POP = 0x57;
+    static final int DUP = 0x59;
+    static final int DUP_X1 = 0x5a;
+    static final int DUP_X2 = 0x5b;
+    static final int SWAP = 0x5f;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int IF_ACMPEQ = 0xa5;
+    static final int IF_ACMPNE = 0xa6;
+    static final int GOTO = 0xa7;
+    static final int ARETURN = 0xb0;
+    static final int RETURN = 0xb1;
+    static final int GETSTATIC = 0xb2;
+    static final int GETFIELD = 0xb4;
+    static final int PUTFIELD = 0xb5;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int INVOKEINTERFACE = 0xb9;
+    static final int NEW = 0xbb;
+    static final int ATHROW = 0xbf;
+    static final int CHECKCAST = 0xc0;
+
+    private static final int VERSION = 49;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+
+    private final int access;
+    private final int thisClass;
+    private final int superClass;
+    private final int[] interfaces;
+    private final List<byte[]> fields = new ArrayList<>();
+    private final List<Code> methods = new ArrayList<>();
+
+    ClassFile(int access, String name, String superName, String... interfaceNames) {
+        this.access = access;
+        this.thisClass = classRef(name);
+        this.superClass = classRef(superName);
+        this.interfaces = new int[interfaceNames.length];
+        for(int i = 0; i < interfaceNames.length; i++) {
+            interfaces[i] = classRef(interfaceNames[i]);
+        }
+    }
+
+    void addField(int access, String name, String descriptor) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(0);
+        } catch(IOException error) {
+            throw new IllegalStateException(error);
+        }
+        fields.add(bytes.toByteArray());
+    }
+
+    /**
+     * The returned Code is written out with the class, it has to be
+     * complete by the time toByteArray() is called.
+     */
+    Code addMethod(int access, String name, String descriptor, int argumentSlots) {
+        Code code = new Code(access, utf8(name), utf8(descriptor), argumentSlots);
+        methods.add(code);
+        return code;
+    }
+
+    byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            int codeAttribute = utf8("Code");
+
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolCount);
+            poolBytes.writeTo(out);
+
+            out.writeShort(access);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.length);
+            for(int index : interfaces) out.writeShort(index);
+
+            out.writeShort(fields.size());
+            for(byte[] field : fields) out.write(field);
+
+            out.writeShort(methods.size());
+            for(Code method : methods) method.writeTo(out, codeAttribute);
+
+            // No class attributes
+            out.writeShort(0);
+        } catch(IOException error) {
+            throw new IllegalStateException(error);
+        }
+        return bytes.toByteArray();
+    }
+
+    // Constant pool entries, each is only written once
+
+    int utf8(String value) {
+        Integer index = poolIndex.get("U" + value);
+        if(index != null) return index;
+        try {
+            pool.writeByte(1);
+            pool.writeUTF(value);
+        } catch(IOException error) {
+            throw new IllegalStateException(error);
+        }
+        return newEntry("U" + value);
+    }
+
+    int classRef(String internalName) {
+        return reference("C" + internalName, 7, utf8(internalName), -1);
+    }
+
+    int string(String value) {
+        return reference("S" + value, 8, utf8(value), -1);
+    }
+
+    int integer(int value) {
+        Integer index = poolIndex.get("i" + value);
+        if(index != null) return index;
+        try {
+            pool.writeByte(3);
+            pool.writeInt(value);
+        } catch(IOException error) {
+            throw new IllegalStateException(error);
+        }
+        return newEntry("i" + value);
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return member("F", 9, owner, name, descriptor);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return member("M", 10, owner, name, descriptor);
+    }
+
+    int interfaceMethodRef(String owner, String name, String descriptor) {
+        return member("I", 11, owner, name, descriptor);
+    }
+
+    private int member(String kind, int tag, String owner, String name, String descriptor) {
+        int nameAndType = reference("N" + name + ":" + descriptor, 12,
+            utf8(name), utf8(descriptor));
+        return reference(kind + owner + "." + name + ":" + descriptor, tag,
+            classRef(owner), nameAndType);
+    }
+
+    private int reference(String key, int tag, int first, int second) {
+        Integer index = poolIndex.get(key);
+        if(index != null) return index;
+        try {
+            pool.writeByte(tag);
+            pool.writeShort(first);
+            if(second >= 0) pool.writeShort(second);
+        } catch(IOException error) {
+            throw new IllegalStateException(error);
+        }
+        return newEntry(key);
+    }
+
+    private int newEntry(String key) {
+        int index = poolCount;
+        poolCount++;
+        if(poolCount > 0xFFFF) {
+            throw new IllegalArgumentException("Too many constants in one class.");
+        }
+        poolIndex.put(key, index);
+        return index;
+    }
+
+    /**
+     * Jump target inside a method's code.
+     */
+    static class Label {
+        private int position = -1;
+        // Offsets of the branch instructions still waiting for this label
+        private final List<Integer> branches = new ArrayList<>();
+    }
+
+    private static class Handler {
+        final Label start;
+        final Label end;
+        final Label handler;
+        final int type;
+
+        Handler(Label start, Label end, Label handler, int type) {
+            this.start = start;
+            this.end = end;
+            this.handler = handler;
+            this.type = type;
+        }
+    }
+
+    /**
+     * Bytecode of one method. Keeps track of the stack depth as the code is
+     * emitted to work out max_stack, the emitter only has to set the depth
+     * by hand at the start of an exception handler.
+     */
+    class Code {
+        private final int access;
+        private final int name;
+        private final int descriptor;
+        private byte[] code = new byte[256];
+        private int length = 0;
+        private int stack = 0;
+        private int maxStack = 0;
+        private int maxLocals;
+        private final List<Handler> handlers = new ArrayList<>();
+
+        private Code(int access, int name, int descriptor, int argumentSlots) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.maxLocals = argumentSlots;
+        }
+
+        void insn(int opcode) {
+            write(opcode);
+            switch(opcode) {
+                case ACONST_NULL:
+                case DUP:
+                case DUP_X1:
+                case DUP_X2:
+                    adjust(1);
+                    break;
+                case AALOAD:
+                case POP:
+                case ARETURN:
+                case ATHROW:
+                    adjust(-1);
+                    break;
+                case AASTORE:
+                    adjust(-3);
+                    break;
+                case SWAP:
+                case RETURN:
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown opcode " + opcode + ".");
+            }
+        }
+
+        void push(int value) {
+            if(value >= -1 && value <= 5) {
+                write(ICONST_0 + value);
+            } else if(value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                write(BIPUSH);
+                write(value);
+            } else if(value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                write(SIPUSH);
+                writeShort(value);
+            } else {
+                constant(integer(value));
+                return;
+            }
+            adjust(1);
+        }
+
+        void ldc(String value) {
+            constant(string(value));
+        }
+
+        /**
+         * Pushes the constant at "index" in the pool.
+         */
+        private void constant(int index) {
+            if(index <= 0xFF) {
+                write(LDC);
+                write(index);
+            } else {
+                write(LDC_W);
+                writeShort(index);
+            }
+            adjust(1);
+        }
+
+        void load(int local) {
+            localOp(ALOAD, local);
+            adjust(1);
+        }
+
+        void store(int local) {
+            localOp(ASTORE, local);
+            adjust(-1);
+        }
+
+        void field(int opcode, String owner, String name, String descriptor) {
+            write(opcode);
+            writeShort(fieldRef(owner, name, descriptor));
+            switch(opcode) {
+                case GETSTATIC: adjust(1); break;
+                case GETFIELD: break;
+                case PUTFIELD: adjust(-2); break;
+                default:
+                    throw new IllegalArgumentException("Unknown opcode " + opcode + ".");
+            }
+        }
+
+        void invoke(int opcode, String owner, String name, String descriptor) {
+            int arguments = argumentSlots(descriptor);
+            write(opcode);
+            if(opcode == INVOKEINTERFACE) {
+                writeShort(interfaceMethodRef(owner, name, descriptor));
+                write(arguments + 1);
+                write(0);
+            } else {
+                writeShort(methodRef(owner, name, descriptor));
+            }
+            int receiver = opcode == INVOKESTATIC ? 0 : 1;
+            char result = descriptor.charAt(descriptor.indexOf(')') + 1);
+            int results = result == 'V' ? 0 : (result == 'J' || result == 'D') ? 2 : 1;
+            adjust(results - arguments - receiver);
+        }
+
+        void type(int opcode, String internalName) {
+            write(opcode);
+            writeShort(classRef(internalName));
+            if(opcode == NEW) adjust(1);
+        }
+
+        void jump(int opcode, Label label) {
+            int position = length;
+            write(opcode);
+            if(label.position >= 0) {
+                writeShort(label.position - position);
+            } else {
+                label.branches.add(position);
+                writeShort(0);
+            }
+            switch(opcode) {
+                case IFEQ:
+                case IFNE:
+                    adjust(-1);
+                    break;
+                case IF_ACMPEQ:
+                case IF_ACMPNE:
+                    adjust(-2);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        void mark(Label label) {
+            label.position = length;
+            for(int branch : label.branches) {
+                patchShort(branch + 1, length - branch);
+            }
+            label.branches.clear();
+        }
+
+        /**
+         * Code between "start" and "end" that throws "type" continues at
+         * "handler". Inner handlers have to be added first.
+         */
+        void handler(Label start, Label end, Label handler, String type) {
+            // An empty range can't throw and isn't allowed in the table
+            if(start.position == end.position) return;
+            handlers.add(new Handler(start, end, handler, classRef(type)));
+        }
+
+        void setStack(int depth) {
+            stack = depth;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        int stack() {
+            return stack;
+        }
+
+        private void localOp(int opcode, int local) {
+            if(local > 0xFF) {
+                throw new IllegalArgumentException("Too many locals in one method.");
+            }
+            if(local <= 3) {
+                // aload_<n> and astore_<n>
+                write((opcode == ALOAD ? 0x2a : 0x4b) + local);
+            } else {
+                write(opcode);
+                write(local);
+            }
+            maxLocals = Math.max(maxLocals, local + 1);
+        }
+
+        private void adjust(int delta) {
+            stack += delta;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        private void write(int value) {
+            if(length == code.length) {
+                code = Arrays.copyOf(code, length * 2);
+            }
+            code[length++] = (byte)value;
+        }
+
+        private void writeShort(int value) {
+            write(value >> 8);
+            write(value);
+        }
+
+        private void patchShort(int position, int value) {
+            code[position] = (byte)(value >> 8);
+            code[position + 1] = (byte)value;
+        }
+
+        private void writeTo(DataOutputStream out, int codeAttribute) throws IOException {
+            // Branch offsets are signed 16 bit
+            if(length > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("Method is too large.");
+            }
+
+            out.writeShort(access);
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            out.writeShort(1);
+
+            out.writeShort(codeAttribute);
+            out.writeInt(12 + length + 8 * handlers.size());
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(length);
+            out.write(code, 0, length);
+            out.writeShort(handlers.size());
+            for(Handler handler : handlers) {
+                out.writeShort(handler.start.position);
+                out.writeShort(handler.end.position);
+                out.writeShort(handler.handler.position);
+                out.writeShort(handler.type);
+            }
+            // No attributes on the code
+            out.writeShort(0);
+        }
+    }
+
+    private static int argumentSlots(String descriptor) {
+        int slots = 0;
+        int i = 1;
+        while(descriptor.charAt(i) != ')') {
+            char c = descriptor.charAt(i);
+            if(c == 'J' || c == 'D') {
+                slots += 2;
+                i++;
+            } else {
+                slots += 1;
+                while(descriptor.charAt(i) == '[') i++;
+                if(descriptor.charAt(i) == 'L') {
+                    i = descriptor.indexOf(';', i) + 1;
+                } else {
+                    i++;
+                }
+            }
+        }
+        return slots;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,9 @@
+package com.interpreter.yai;
+
+/**
+ * How the execution of a statement ended. Anything but NORMAL makes the
+ * enclosing statements stop, up to the loop or function handling it.
+ */
+enum Completion {
+    NORMAL, BREAK, CONTINUE, RETURN
+}
\ No newline at end of file
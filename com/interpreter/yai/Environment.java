@@ -3,54 +3,100 @@ package com.interpreter.yai;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * Only the global environment stores its variables by Symbol, in the
+ * GlobalCell the Resolver binds their references to. Every local scope is
+ * a fixed-size array indexed by the slot the Resolver assigned to each
+ * declaration.
+ *
+ * A scope no closure can see may also keep numbers unboxed, the slot then
+ * holds UNBOXED and the value is in "numbers". Code compiled by the Jit
+ * reads "slots" directly, but it never sees such an environment.
+ */
 class Environment {
+    static final Object UNBOXED = new Object();
+
     final Environment enclosing;
-    private final Map<String, Object> values = new HashMap<>();
+    private final Map<Symbol, GlobalCell> cells;
+    final Object[] slots;
+    private final boolean unboxed;
+    private double[] numbers;
 
     Environment() {
         enclosing = null;
+        cells = new HashMap<>();
+        slots = null;
+        unboxed = false;
+    }
+
+    Environment(Environment enclosing, int size) {
+        this(enclosing, size, false);
     }
 
-    Environment(Environment enclosing) {
+    Environment(Environment enclosing, int size, boolean unboxed) {
         this.enclosing = enclosing;
+        this.cells = null;
+        this.slots = new Object[size];
+        this.unboxed = unboxed;
     }
 
-    Object get(Token name) {
-        if(values.containsKey(name.lexeme)) {
-            return values.get(name.lexeme);
+    /**
+     * The cell of the global "name", created undefined the first time.
+     * Resolvers of the bodies of "--parallel" ask for cells at once.
+     */
+    synchronized GlobalCell cell(Symbol name) {
+        GlobalCell cell = cells.get(name);
+        if(cell == null) {
+            cell = new GlobalCell();
+            cells.put(name, cell);
         }
+        return cell;
+    }
 
-        if(enclosing != null) {
-            return enclosing.get(name);
-        }
-        
-        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+    void define(Symbol name, Object value) {
+        cell(name).define(value);
     }
 
-    void assign(Token name, Object value) {
-        if(values.containsKey(name.lexeme)) {
-            values.put(name.lexeme, value);
-            return;
-        }
+    void define(int slot, Object value) {
+        slots[slot] = value;
+    }
 
-        if(enclosing != null) {
-            enclosing.assign(name, value);
-            return;
+    Object getAt(int distance, int slot) {
+        Environment environment = ancestor(distance);
+        Object value = environment.slots[slot];
+        if(value == UNBOXED) {
+            return environment.numbers[slot];
         }
-
-        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+        return value;
     }
-    
-    void define(String name, Object value) {
-        values.put(name, value);
+
+    double getDoubleAt(int distance, int slot) {
+        Environment environment = ancestor(distance);
+        Object value = environment.slots[slot];
+        if(value == UNBOXED) {
+            return environment.numbers[slot];
+        }
+        if(value instanceof Double) {
+            return (double)value;
+        }
+        throw new UnexpectedType(value);
     }
 
-    Object getAt(int distance, String name) {
-        return ancestor(distance).values.get(name);
+    void assignAt(int distance, int slot, Object value) {
+        ancestor(distance).slots[slot] = value;
     }
 
-    void assignAt(int distance, Token name, Object value) {
-        ancestor(distance).values.put(name.lexeme, value);
+    void assignDoubleAt(int distance, int slot, double value) {
+        Environment environment = ancestor(distance);
+        if(!environment.unboxed) {
+            environment.slots[slot] = value;
+            return;
+        }
+        if(environment.numbers == null) {
+            environment.numbers = new double[environment.slots.length];
+        }
+        environment.numbers[slot] = value;
+        environment.slots[slot] = UNBOXED;
     }
 
     Environment ancestor(int distance) {
@@ -4,12 +4,36 @@ import java.util.List;
 
 abstract class Expr {
 
+    // Kind tags of the sub-types, in the order they are declared
+    static final int ASSIGN = 0;
+    static final int BINARY = 1;
+    static final int CALL = 2;
+    static final int GET = 3;
+    static final int GROUPING = 4;
+    static final int INLINE = 5;
+    static final int INVOKE = 6;
+    static final int LITERAL = 7;
+    static final int LOGICAL = 8;
+    static final int SET = 9;
+    static final int SUPER = 10;
+    static final int THIS = 11;
+    static final int UNARY = 12;
+    static final int VARIABLE = 13;
+
+    final int kind;
+
+    Expr(int kind) {
+        this.kind = kind;
+    }
+
     interface Visitor<T> {
         T visitAssignExpr(Assign expr);
         T visitBinaryExpr(Binary expr);
         T visitCallExpr(Call expr);
         T visitGetExpr(Get expr);
         T visitGroupingExpr(Grouping expr);
+        T visitInlineExpr(Inline expr);
+        T visitInvokeExpr(Invoke expr);
         T visitLiteralExpr(Literal expr);
         T visitLogicalExpr(Logical expr);
         T visitSetExpr(Set expr);
@@ -22,8 +46,12 @@ abstract class Expr {
     static class Assign extends Expr {
         final Token name;
         final Expr value;
+        int depth = -1;
+        int slot = -1;
+        GlobalCell cell;
 
         Assign(Token name, Expr value) {
+            super(ASSIGN);
             this.name = name;
             this.value = value;
         }
@@ -34,14 +62,22 @@ abstract class Expr {
         }
     }
 
+    /**
+     * Operators only keep their type and line, the text of an operator for
+     * AstPrinter is the same for every one, see TokenBuffer.lexemeOf().
+     */
     static class Binary extends Expr {
         final Expr left;
-        final Token operator;
+        final TokenType operator;
+        final int line;
         final Expr right;
+        BinaryNode node;
 
-        Binary(Expr left, Token operator, Expr right) {
+        Binary(Expr left, TokenType operator, int line, Expr right) {
+            super(BINARY);
             this.left = left;
             this.operator = operator;
+            this.line = line;
             this.right = right;
         }
 
@@ -51,14 +87,18 @@ abstract class Expr {
         }
     }
 
+    /**
+     * "line" is the line of the closing parenthesis, for runtime errors.
+     */
     static class Call extends Expr {
         final Expr callee;
-        final Token paren;
-        final List<Expr> arguments;
+        final int line;
+        final Expr[] arguments;
 
-        Call(Expr callee, Token paren, List<Expr> arguments) {
+        Call(Expr callee, int line, Expr[] arguments) {
+            super(CALL);
             this.callee = callee;
-            this.paren = paren;
+            this.line = line;
             this.arguments = arguments;
         }
 
@@ -71,8 +111,10 @@ abstract class Expr {
     static class Get extends Expr {
         final Expr object;
         final Token name;
+        final PropertyCache cache = new PropertyCache();
 
         Get(Expr object, Token name) {
+            super(GET);
             this.object = object;
             this.name = name;
         }
@@ -87,6 +129,7 @@ abstract class Expr {
         final Expr expression;
 
         Grouping(Expr expression) {
+            super(GROUPING);
             this.expression = expression;
         }
 
@@ -96,10 +139,60 @@ abstract class Expr {
         }
     }
 
+    /**
+     * A call of a small top-level function replaced by its body, created by
+     * the Optimizer. The body only runs while the global still holds the
+     * function, otherwise the original call is made.
+     */
+    static class Inline extends Expr {
+        final Expr.Call call;
+        final Stmt.Function function;
+        final Expr body;
+
+        Inline(Expr.Call call, Stmt.Function function, Expr body) {
+            super(INLINE);
+            this.call = call;
+            this.function = function;
+            this.body = body;
+        }
+
+        @Override
+        <T> T accept(Visitor<T> visitor) {
+            return visitor.visitInlineExpr(this);
+        }
+    }
+
+    /**
+     * A call of a property, "object.name(arguments)". The parser
+     * creates it instead of a Call of a Get so a method can be called
+     * with its receiver, without creating a bound method.
+     */
+    static class Invoke extends Expr {
+        final Expr object;
+        final Token name;
+        final int line;
+        final Expr[] arguments;
+        final PropertyCache cache = new PropertyCache();
+
+        Invoke(Expr object, Token name, int line, Expr[] arguments) {
+            super(INVOKE);
+            this.object = object;
+            this.name = name;
+            this.line = line;
+            this.arguments = arguments;
+        }
+
+        @Override
+        <T> T accept(Visitor<T> visitor) {
+            return visitor.visitInvokeExpr(this);
+        }
+    }
+
     static class Literal extends Expr {
         final Object value;
 
         Literal(Object value) {
+            super(LITERAL);
             this.value = value;
         }
 
@@ -111,12 +204,15 @@ abstract class Expr {
 
     static class Logical extends Expr {
         final Expr left;
-        final Token operator;
+        final TokenType operator;
+        final int line;
         final Expr right;
 
-        Logical(Expr left, Token operator, Expr right) {
+        Logical(Expr left, TokenType operator, int line, Expr right) {
+            super(LOGICAL);
             this.left = left;
             this.operator = operator;
+            this.line = line;
             this.right = right;
         }
 
@@ -130,8 +226,10 @@ abstract class Expr {
         final Expr object;
         final Token name;
         final Expr value;
+        final PropertyCache cache = new PropertyCache();
 
         Set(Expr object, Token name, Expr value) {
+            super(SET);
             this.object = object;
             this.name = name;
             this.value = value;
@@ -146,8 +244,10 @@ abstract class Expr {
     static class Super extends Expr {
         final Token keyword;
         final Token method;
+        int depth = -1;
 
         Super(Token keyword, Token method) {
+            super(SUPER);
             this.keyword = keyword;
             this.method = method;
         }
@@ -160,8 +260,10 @@ abstract class Expr {
 
     static class This extends Expr {
         final Token keyword;
+        int depth = -1;
 
         This(Token keyword) {
+            super(THIS);
             this.keyword = keyword;
         }
 
@@ -172,11 +274,14 @@ abstract class Expr {
     }
 
     static class Unary extends Expr {
-        final Token operator;
+        final TokenType operator;
+        final int line;
         final Expr right;
 
-        Unary(Token operator, Expr right) {
+        Unary(TokenType operator, int line, Expr right) {
+            super(UNARY);
             this.operator = operator;
+            this.line = line;
             this.right = right;
         }
 
@@ -186,10 +291,19 @@ abstract class Expr {
         }
     }
 
+    /**
+     * A local is found "depth" scopes out, at "slot". A global, with a
+     * depth of -1, is in "cell", bound by the Resolver. So is the global
+     * of an Assign.
+     */
     static class Variable extends Expr {
         final Token name;
+        int depth = -1;
+        int slot = -1;
+        GlobalCell cell;
 
         Variable(Token name) {
+            super(VARIABLE);
             this.name = name;
         }
 
@@ -0,0 +1,36 @@
+package com.interpreter.yai;
+
+/**
+ * A global variable, shared by every node reading or assigning it. The
+ * Resolver binds each reference to a global to its cell, so reading one
+ * is a field load instead of a lookup in the globals.
+ *
+ * The cell of a name is created by its first declaration or reference,
+ * whichever comes first, and stays undefined until the declaration runs.
+ * A function can use a global declared after it, and declaring the global
+ * again, like at the prompt, stores in the same cell.
+ */
+final class GlobalCell {
+    private static final Object UNDEFINED = new Object();
+
+    private Object value = UNDEFINED;
+
+    Object get(Token name) {
+        Object value = this.value;
+        if(value == UNDEFINED) {
+            throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+        }
+        return value;
+    }
+
+    void assign(Token name, Object value) {
+        if(this.value == UNDEFINED) {
+            throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+        }
+        this.value = value;
+    }
+
+    void define(Object value) {
+        this.value = value;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,285 @@
+package com.interpreter.yai;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.interpreter.yai.Expr.Assign;
+import com.interpreter.yai.Expr.Binary;
+import com.interpreter.yai.Expr.Call;
+import com.interpreter.yai.Expr.Get;
+import com.interpreter.yai.Expr.Grouping;
+import com.interpreter.yai.Expr.Inline;
+import com.interpreter.yai.Expr.Invoke;
+import com.interpreter.yai.Expr.Literal;
+import com.interpreter.yai.Expr.Logical;
+import com.interpreter.yai.Expr.Super;
+import com.interpreter.yai.Expr.This;
+import com.interpreter.yai.Expr.Unary;
+import com.interpreter.yai.Expr.Variable;
+
+/**
+ * Replaces calls of small top-level functions by their bodies, for the
+ * Optimizer.
+ *
+ * A function can be inlined when its body is a single "return" of an
+ * expression of at most MAX_SIZE nodes, made of literals, operators,
+ * calls and property reads of its parameters and globals, which doesn't
+ * use the function itself. Its name must not be declared by anything
+ * else at the top level, nor assigned.
+ *
+ * The parameters are replaced by the arguments, so the body runs in the
+ * environment of the caller. To keep the order of evaluation, an argument
+ * has to be a literal, a local when the body doesn't call anything, or
+ * the only other kind of argument when its parameter is read once, before
+ * any other variable of the body.
+ */
+class Inliner implements Expr.Visitor<Expr> {
+    private static final int MAX_SIZE = 16;
+
+    // Sites inlined so far, for Optimizer.stats()
+    private final List<String> inlined;
+
+    private static class Candidate {
+        final Stmt.Function function;
+        final Expr body;
+        // Reads of every parameter in the body
+        final int[] reads;
+        // Parameter that is the first variable read by the body, or -1
+        int first = -1;
+        boolean readsVariable = false;
+        boolean calls = false;
+
+        Candidate(Stmt.Function function, Expr body) {
+            this.function = function;
+            this.body = body;
+            this.reads = new int[function.params.length];
+        }
+    }
+
+    private final Map<Symbol, Candidate> candidates = new HashMap<>();
+    // Arguments of the call being inlined, by parameter
+    private Expr[] arguments;
+
+    Inliner(List<Stmt> statements, Set<Symbol> assignedGlobals, List<String> inlined) {
+        this.inlined = inlined;
+        Map<Symbol, Integer> declarations = new HashMap<>();
+        for(Stmt statement : statements) {
+            Token name = null;
+            if(statement instanceof Stmt.Function) {
+                name = ((Stmt.Function)statement).name;
+            } else if(statement instanceof Stmt.Var) {
+                name = ((Stmt.Var)statement).name;
+            } else if(statement instanceof Stmt.Class) {
+                name = ((Stmt.Class)statement).name;
+            }
+            if(name != null) {
+                declarations.merge(name.symbol, 1, Integer::sum);
+            }
+        }
+
+        for(Stmt statement : statements) {
+            if(!(statement instanceof Stmt.Function)) continue;
+            Stmt.Function function = (Stmt.Function)statement;
+            Symbol name = function.name.symbol;
+            if(declarations.getOrDefault(name, 0) != 1 || assignedGlobals.contains(name)) continue;
+            if(function.body.size() != 1 || !(function.body.get(0) instanceof Stmt.Return)) continue;
+
+            Expr body = ((Stmt.Return)function.body.get(0)).value;
+            if(body == null) continue;
+            Candidate candidate = new Candidate(function, body);
+            int size = scan(candidate, body);
+            if(size != -1 && size <= MAX_SIZE) {
+                candidates.put(name, candidate);
+            }
+        }
+    }
+
+    /**
+     * Returns the body to evaluate instead of "call", or null if the call
+     * can't be inlined.
+     */
+    Inline inline(Call call) {
+        if(!(call.callee instanceof Variable)) return null;
+        Variable callee = (Variable)call.callee;
+        if(callee.depth != -1) return null;
+        Candidate candidate = candidates.get(callee.name.symbol);
+        // A wrong number of arguments is reported by the call
+        if(candidate == null || call.arguments.length != candidate.reads.length) return null;
+
+        int other = -1;
+        for(int i = 0; i < call.arguments.length; i++) {
+            Expr argument = call.arguments[i];
+            if(argument instanceof Literal) continue;
+            if(!candidate.calls && argument instanceof Variable
+                    && ((Variable)argument).depth != -1) {
+                continue;
+            }
+            if(other != -1) return null;
+            other = i;
+        }
+        if(other != -1) {
+            if(candidate.first != other || candidate.reads[other] != 1) return null;
+            for(int i = 0; i < call.arguments.length; i++) {
+                if(i != other && !(call.arguments[i] instanceof Literal)) return null;
+            }
+        }
+
+        arguments = call.arguments;
+        Expr body = candidate.body.accept(this);
+        arguments = null;
+        inlined.add("Inlined '" + callee.name.lexeme + "' at line " + call.line + ".");
+        return new Inline(call, candidate.function, body);
+    }
+
+    /**
+     * Returns the number of nodes of "expr", or -1 if it can't be inlined.
+     */
+    private static int scan(Candidate candidate, Expr expr) {
+        if(expr instanceof Literal) {
+            return 1;
+        }
+        if(expr instanceof Variable) {
+            Variable variable = (Variable)expr;
+            if(variable.depth == 0) {
+                if(!candidate.readsVariable) {
+                    candidate.first = variable.slot;
+                }
+                candidate.readsVariable = true;
+                candidate.reads[variable.slot]++;
+                return 1;
+            }
+            if(variable.depth != -1
+                    || variable.name.symbol == candidate.function.name.symbol) {
+                return -1;
+            }
+            candidate.readsVariable = true;
+            return 1;
+        }
+        if(expr instanceof Grouping) {
+            return scan(candidate, ((Grouping)expr).expression);
+        }
+        if(expr instanceof Unary) {
+            return add(1, scan(candidate, ((Unary)expr).right));
+        }
+        if(expr instanceof Binary) {
+            Binary binary = (Binary)expr;
+            return add(add(1, scan(candidate, binary.left)), scan(candidate, binary.right));
+        }
+        if(expr instanceof Logical) {
+            Logical logical = (Logical)expr;
+            return add(add(1, scan(candidate, logical.left)), scan(candidate, logical.right));
+        }
+        if(expr instanceof Get) {
+            return add(1, scan(candidate, ((Get)expr).object));
+        }
+        if(expr instanceof Call) {
+            Call call = (Call)expr;
+            candidate.calls = true;
+            return add(add(1, scan(candidate, call.callee)), scanAll(candidate, call.arguments));
+        }
+        if(expr instanceof Invoke) {
+            Invoke invoke = (Invoke)expr;
+            candidate.calls = true;
+            return add(add(1, scan(candidate, invoke.object)), scanAll(candidate, invoke.arguments));
+        }
+        // Assignments, "this" and "super"
+        return -1;
+    }
+
+    private static int scanAll(Candidate candidate, Expr[] expressions) {
+        int size = 0;
+        for(Expr expr : expressions) {
+            size = add(size, scan(candidate, expr));
+        }
+        return size;
+    }
+
+    private static int add(int size, int more) {
+        return size == -1 || more == -1 ? -1 : size + more;
+    }
+
+    @Override
+    public Expr visitAssignExpr(Assign expr) {
+        throw new IllegalStateException("Not in an inlined body.");
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Binary expr) {
+        return new Binary(expr.left.accept(this), expr.operator, expr.line, expr.right.accept(this));
+    }
+
+    @Override
+    public Expr visitCallExpr(Call expr) {
+        return new Call(expr.callee.accept(this), expr.line, copy(expr.arguments));
+    }
+
+    @Override
+    public Expr visitGetExpr(Get expr) {
+        return new Get(expr.object.accept(this), expr.name);
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Grouping expr) {
+        return expr.expression.accept(this);
+    }
+
+    @Override
+    public Expr visitInlineExpr(Inline expr) {
+        // Inlined into the copy again, if at all, by the Optimizer
+        return expr.call.accept(this);
+    }
+
+    @Override
+    public Expr visitInvokeExpr(Invoke expr) {
+        return new Invoke(expr.object.accept(this), expr.name, expr.line, copy(expr.arguments));
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Logical expr) {
+        return new Logical(expr.left.accept(this), expr.operator, expr.line, expr.right.accept(this));
+    }
+
+    @Override
+    public Expr visitSetExpr(Expr.Set expr) {
+        throw new IllegalStateException("Not in an inlined body.");
+    }
+
+    @Override
+    public Expr visitSuperExpr(Super expr) {
+        throw new IllegalStateException("Not in an inlined body.");
+    }
+
+    @Override
+    public Expr visitThisExpr(This expr) {
+        throw new IllegalStateException("Not in an inlined body.");
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Unary expr) {
+        return new Unary(expr.operator, expr.line, expr.right.accept(this));
+    }
+
+    @Override
+    public Expr visitVariableExpr(Variable expr) {
+        // Globals are the same in the caller, parameters become arguments
+        if(expr.depth == 0) {
+            return arguments[expr.slot];
+        }
+        return expr;
+    }
+
+    private Expr[] copy(Expr[] expressions) {
+        Expr[] copies = new Expr[expressions.length];
+        for(int i = 0; i < expressions.length; i++) {
+            copies[i] = expressions[i].accept(this);
+        }
+        return copies;
+    }
+}
\ No newline at end of file
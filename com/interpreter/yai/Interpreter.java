@@ -1,7 +1,6 @@
 package com.interpreter.yai;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -11,6 +10,8 @@ import com.interpreter.yai.Expr.Binary;
 import com.interpreter.yai.Expr.Call;
 import com.interpreter.yai.Expr.Get;
 import com.interpreter.yai.Expr.Grouping;
+import com.interpreter.yai.Expr.Inline;
+import com.interpreter.yai.Expr.Invoke;
 import com.interpreter.yai.Expr.Literal;
 import com.interpreter.yai.Expr.Logical;
 import com.interpreter.yai.Expr.Set;
@@ -22,19 +23,44 @@ import com.interpreter.yai.Stmt.Block;
 import com.interpreter.yai.Stmt.Break;
 import com.interpreter.yai.Stmt.Continue;
 import com.interpreter.yai.Stmt.Expression;
+import com.interpreter.yai.Stmt.For;
 import com.interpreter.yai.Stmt.Function;
 import com.interpreter.yai.Stmt.If;
 import com.interpreter.yai.Stmt.Print;
 import com.interpreter.yai.Stmt.Var;
 import com.interpreter.yai.Stmt.While;
 
-class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
+class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Completion> {
     final Environment globals = new Environment();
     private Environment environment = globals;
-    private final Map<Expr, Integer> locals = new HashMap<>();
+    // Value of the last Completion.RETURN
+    private Object returnValue;
+    // Keyword of the last Completion.BREAK or Completion.CONTINUE
+    private Token jumpKeyword;
+    // Returned instead of the value of a tail call, which is left for
+    // YaiFunction.invoke() to make with the following
+    static final Object TAIL_CALL = new Object();
+    YaiFunction tailFunction;
+    YaiInstance tailReceiver;
+    List<Object> tailArguments;
+    // Rewrite binary expressions into nodes specialized for their operands,
+    // and keep the numbers of scopes no closure can see unboxed
+    final boolean specialize;
+    // Compiles hot functions to JVM bytecode, null when disabled
+    final Jit jit;
+    // Dispatch on the kind tags of the nodes instead of calling accept()
+    final boolean switchDispatch;
 
     Interpreter() {
-        globals.define("clock", new YaiCallable() {
+        this(false, null, false);
+    }
+
+    Interpreter(boolean specialize, Jit jit, boolean switchDispatch) {
+        this.specialize = specialize;
+        this.jit = jit;
+        this.switchDispatch = switchDispatch;
+
+        globals.define(Symbol.of("clock"), new YaiCallable() {
             @Override
             public int arity() { return 0; }
 
@@ -47,7 +73,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             public String toString() { return "<native fn clock>"; }
         });
 
-        globals.define("str", new YaiCallable() {
+        globals.define(Symbol.of("str"), new YaiCallable() {
             @Override
             public int arity() { return 1; }
 
@@ -71,17 +97,19 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         } catch (FlowControl flowError) {
             Yai.runtimeError(new RuntimeError(flowError.keyword,
                 "'" + flowError.keyword.lexeme + "' not properly in loop."));
+        } catch (LazyBody.Failure failure) {
+            // The errors in the body are already reported
         }
     }
 
     @Override
-    public Void visitBlockStmt(Block stmt) {
-        executeBlock(stmt.statements, new Environment(environment));
-        return null;
+    public Completion visitBlockStmt(Block stmt) {
+        return executeBlock(stmt.statements,
+            new Environment(environment, stmt.scopeSize, specialize && !stmt.captured));
     }
 
     @Override
-    public Void visitClassStmt(Stmt.Class stmt) {
+    public Completion visitClassStmt(Stmt.Class stmt) {
         Object superclass = null;
         if(stmt.superclass != null) {
             superclass = evaluate(stmt.superclass);
@@ -90,18 +118,18 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             }
         }
 
-        environment.define(stmt.name.lexeme, null);
+        define(stmt.name, stmt.slot, null);
 
         if(stmt.superclass != null) {
-            environment = new Environment(environment);
-            environment.define("super", superclass);
+            environment = new Environment(environment, 1);
+            environment.define(0, superclass);
         }
 
-        Map<String, YaiFunction> methods = new HashMap<>();
+        Map<Symbol, YaiFunction> methods = new HashMap<>();
         for(Stmt.Function method : stmt.methods) {
-            boolean isInit = method.name.lexeme.equals("init");
+            boolean isInit = method.name.symbol == Symbol.INIT;
             YaiFunction function = new YaiFunction(method, environment, isInit);
-            methods.put(method.name.lexeme, function);
+            methods.put(method.name.symbol, function);
         }
 
         YaiClass klass = new YaiClass(stmt.name.lexeme, (YaiClass)superclass, methods);
@@ -109,107 +137,152 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         if(superclass != null) {
             environment = environment.enclosing;
         }
-        environment.assign(stmt.name, klass);
-        return null;
+        define(stmt.name, stmt.slot, klass);
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitExpressionStmt(Expression stmt) {
+    public Completion visitExpressionStmt(Expression stmt) {
+        if(specialize && stmt.expression instanceof Assign) {
+            // The value isn't needed, a number can be stored unboxed
+            Assign assign = (Assign)stmt.expression;
+            if(assign.depth != -1 && isSpeculatedDouble(assign.value)) {
+                try {
+                    environment.assignDoubleAt(assign.depth, assign.slot,
+                        evaluateDouble(assign.value));
+                } catch(UnexpectedType unexpected) {
+                    environment.assignAt(assign.depth, assign.slot, unexpected.value);
+                }
+                return Completion.NORMAL;
+            }
+        }
         evaluate(stmt.expression);
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitFunctionStmt(Function stmt) {
+    public Completion visitFunctionStmt(Function stmt) {
         YaiFunction function = new YaiFunction(stmt, environment, false);
-        environment.define(stmt.name.lexeme, function);
-        return null;
+        define(stmt.name, stmt.slot, function);
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitReturnStmt(Stmt.Return stmt) {
+    public Completion visitReturnStmt(Stmt.Return stmt) {
         Object value = null;
-        if(stmt.value != null) {
+        if(stmt.tail && stmt.value instanceof Call) {
+            Call call = (Call)stmt.value;
+            Object callee = evaluate(call.callee);
+            value = tailCall(callee, call.line, evaluateAll(call.arguments));
+        } else if(stmt.tail && stmt.value instanceof Invoke) {
+            Invoke invoke = (Invoke)stmt.value;
+            Object object = evaluate(invoke.object);
+            Object callee = property(object, invoke);
+            value = tailInvoke(object, callee, invoke.line, evaluateAll(invoke.arguments));
+        } else if(stmt.value != null) {
             value = evaluate(stmt.value);
         }
-        throw new Return(value);
+        returnValue = value;
+        return Completion.RETURN;
     }
 
     @Override
-    public Void visitIfStmt(If stmt) {
-        if(isTruthy(evaluate(stmt.condition))) {
-            execute(stmt.thenBranch);
+    public Completion visitIfStmt(If stmt) {
+        if(evaluateBoolean(stmt.condition)) {
+            return execute(stmt.thenBranch);
         } else if(stmt.elseBranch != null) {
-            execute(stmt.elseBranch);
+            return execute(stmt.elseBranch);
         }
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitPrintStmt(Print stmt) {
+    public Completion visitPrintStmt(Print stmt) {
         Object value = evaluate(stmt.expression);
         System.out.println(stringify(value));
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitVarStmt(Var stmt) {
+    public Completion visitVarStmt(Var stmt) {
+        if(specialize && stmt.slot >= 0 && stmt.initializer != null
+                && isSpeculatedDouble(stmt.initializer)) {
+            try {
+                environment.assignDoubleAt(0, stmt.slot, evaluateDouble(stmt.initializer));
+            } catch(UnexpectedType unexpected) {
+                environment.define(stmt.slot, unexpected.value);
+            }
+            return Completion.NORMAL;
+        }
+
         Object value = null;
         if (stmt.initializer != null) {
             value = evaluate(stmt.initializer);
         }
-        environment.define(stmt.name.lexeme, value);
-        return null;
+        define(stmt.name, stmt.slot, value);
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitWhileStmt(While stmt) {
-        while(isTruthy(evaluate(stmt.condition))) {
-            try {
-                execute(stmt.body);
-            } catch(FlowControl flowControl) {
-                if(flowControl.keyword.type == TokenType.BREAK) {
+    public Completion visitWhileStmt(While stmt) {
+        while(evaluateBoolean(stmt.condition)) {
+            Completion completion = executeLoopBody(stmt.body);
+            if(completion == Completion.BREAK) {
+                break;
+            } else if(completion == Completion.RETURN) {
+                return completion;
+            }
+        }
+        return Completion.NORMAL;
+    }
+
+    @Override
+    public Completion visitForStmt(For stmt) {
+        Environment previous = environment;
+        try {
+            environment = new Environment(environment, stmt.scopeSize,
+                specialize && !stmt.captured);
+            if(stmt.initializer != null) {
+                execute(stmt.initializer);
+            }
+
+            while(evaluateBoolean(stmt.condition)) {
+                Completion completion = executeLoopBody(stmt.body);
+                if(completion == Completion.BREAK) {
                     break;
-                } else if(flowControl.keyword.type == TokenType.CONTINUE) {
-                    if(stmt.increment != null) {
-                        /*
-                        execute the increment statement after wrapping it in a
-                        block because, if there were no break/continue stmt the
-                        increment statement would be executed inside the while
-                        block and it will maintain the envrionment chain which
-                        resolver assumes.
-                        not running it inside a block will break that assumed
-                        chain length. It won't find the required vars at correct
-                        distance in the environment.
-                        */
-                        execute(new Stmt.Block(Arrays.asList(stmt.increment)));
-                    }
-                    continue;
+                } else if(completion == Completion.RETURN) {
+                    return completion;
+                }
+                if(stmt.increment != null) {
+                    execute(stmt.increment);
                 }
             }
+            return Completion.NORMAL;
+        } finally {
+            environment = previous;
         }
-        return null;
     }
 
     @Override
-    public Void visitBreakStmt(Break stmt) {
-        throw new FlowControl(stmt.keyword);
+    public Completion visitBreakStmt(Break stmt) {
+        jumpKeyword = stmt.keyword;
+        return Completion.BREAK;
     }
 
     @Override
-    public Void visitContinueStmt(Continue stmt) {
-        throw new FlowControl(stmt.keyword);
+    public Completion visitContinueStmt(Continue stmt) {
+        jumpKeyword = stmt.keyword;
+        return Completion.CONTINUE;
     }
 
     @Override
     public Object visitAssignExpr(Assign expr) {
         Object value = evaluate(expr.value);
 
-        Integer distance = locals.get(expr);
-        if(distance != null) {
-            environment.assignAt(distance, expr.name, value);
+        if(expr.depth != -1) {
+            environment.assignAt(expr.depth, expr.slot, value);
         } else {
-            globals.assign(expr.name, value);
+            expr.cell.assign(expr.name, value);
         }
 
         return value;
@@ -217,13 +290,23 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitBinaryExpr(Binary expr) {
+        if(specialize && expr.node != null) {
+            return expr.node.execute(this, expr);
+        }
+
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
+        if(specialize) {
+            expr.node = BinaryNode.specialize(expr, left, right);
+        }
+        return binary(expr.operator, expr.line, left, right);
+    }
 
+    static Object binary(TokenType operator, int line, Object left, Object right) {
         // TODO: different from book,
         // in book this check is before each operation in below switch
         // I am creating a new switch
-        switch (expr.operator.type) {
+        switch (operator) {
             case GREATER:
             case GREATER_EQUAL:
             case LESS:
@@ -231,12 +314,12 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             case MINUS:
             case SLASH:
             case STAR:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(line, left, right);
             default:
                 break;
         }
 
-        switch (expr.operator.type) {
+        switch (operator) {
             case GREATER:
                 return (double) left > (double) right;
             case GREATER_EQUAL:
@@ -257,11 +340,11 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 if (left instanceof Double && right instanceof Double) {
                     return (double) left + (double) right;
                 }
-                if (left instanceof String && right instanceof String) {
-                    return (String) left + (String) right;
+                if (left instanceof CharSequence && right instanceof CharSequence) {
+                    return Rope.concat((CharSequence) left, (CharSequence) right);
                 }
                 throw new RuntimeError(
-                    expr.operator,
+                    line,
                     "Operands must be two Numbers or two Strings"
                 );
             case SLASH:
@@ -280,29 +363,102 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Object visitCallExpr(Call expr) {
         Object callee = evaluate(expr.callee);
+        return call(callee, expr.line, evaluateAll(expr.arguments));
+    }
 
-        List<Object> arguments = new ArrayList<>();
-        for(Expr argument : expr.arguments) {
-            arguments.add(evaluate(argument));
-        }
+    Object call(Object callee, int line, List<Object> arguments) {
         if(!(callee instanceof YaiCallable)) {
-            throw new RuntimeError(expr.paren, "Can only call functions and classes.");
+            throw new RuntimeError(line, "Can only call functions and classes.");
         }
         
         YaiCallable function = (YaiCallable)callee;
-        if(arguments.size() != function.arity()) {
-            throw new RuntimeError(expr.paren, "Expected "
-                + function.arity() + " arguments but got "
-                + arguments.size() + ".");
+        checkArity(function, line, arguments);
+        try {
+            return function.call(this, arguments);
+        } catch(StackOverflowError error) {
+            throw new RuntimeError(line, "Stack overflow.");
+        }
+    }
+
+    /**
+     * Same as call() for the value of a return, except that a Yai function
+     * is left for the YaiFunction running the current one to call, after
+     * the current one returns. Returns TAIL_CALL in that case.
+     */
+    Object tailCall(Object callee, int line, List<Object> arguments) {
+        if(callee instanceof YaiFunction) {
+            YaiFunction function = (YaiFunction)callee;
+            checkArity(function, line, arguments);
+            return tail(function, null, arguments);
         }
-        return function.call(this, arguments);
+        return call(callee, line, arguments);
+    }
+
+    /**
+     * Same as invoke(), for a tail call like tailCall().
+     */
+    Object tailInvoke(Object object, Object callee, int line, List<Object> arguments) {
+        if(callee instanceof YaiFunction) {
+            YaiFunction function = (YaiFunction)callee;
+            checkArity(function, line, arguments);
+            return tail(function, function.isUnbound() ? (YaiInstance)object : null, arguments);
+        }
+        return call(callee, line, arguments);
+    }
+
+    private Object tail(YaiFunction function, YaiInstance receiver, List<Object> arguments) {
+        tailFunction = function;
+        tailReceiver = receiver;
+        tailArguments = arguments;
+        return TAIL_CALL;
+    }
+
+    @Override
+    public Object visitInlineExpr(Inline expr) {
+        Variable callee = (Variable)expr.call.callee;
+        Object function = callee.cell.get(callee.name);
+        if(function instanceof YaiFunction && ((YaiFunction)function).isDeclaredBy(expr.function)) {
+            return evaluate(expr.body);
+        }
+        return evaluate(expr.call);
+    }
+
+    @Override
+    public Object visitInvokeExpr(Invoke expr) {
+        Object object = evaluate(expr.object);
+        Object callee = property(object, expr);
+        return invoke(object, callee, expr.line, evaluateAll(expr.arguments));
+    }
+
+    /**
+     * Looks up the property "expr" calls. A method is returned unbound,
+     * invoke() passes it "object" as the receiver.
+     */
+    Object property(Object object, Invoke expr) {
+        if(object instanceof YaiInstance) {
+            return expr.cache.find((YaiInstance)object, expr.name);
+        }
+        throw new RuntimeError(expr.name, "Only instances have properties.");
+    }
+
+    Object invoke(Object object, Object callee, int line, List<Object> arguments) {
+        if(callee instanceof YaiFunction && ((YaiFunction)callee).isUnbound()) {
+            YaiFunction method = (YaiFunction)callee;
+            checkArity(method, line, arguments);
+            try {
+                return method.invoke(this, (YaiInstance)object, arguments);
+            } catch(StackOverflowError error) {
+                throw new RuntimeError(line, "Stack overflow.");
+            }
+        }
+        return call(callee, line, arguments);
     }
 
     @Override
     public Object visitGetExpr(Get expr) {
         Object object = evaluate(expr.object);
         if(object instanceof YaiInstance) {
-            return ((YaiInstance)object).get(expr.name);
+            return expr.cache.get((YaiInstance)object, expr.name);
         }
         throw new RuntimeError(expr.name, "Only instances have properties.");
     }
@@ -326,19 +482,18 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         }
 
         Object value = evaluate(expr.value);
-        ((YaiInstance)object).set(expr.name, value);
+        expr.cache.set((YaiInstance)object, expr.name, value);
         return value;
     }
 
     @Override
     public Object visitSuperExpr(Super expr) {
-        int distance = locals.get(expr);
-        YaiClass superclass = (YaiClass)environment.getAt(distance, "super");
+        YaiClass superclass = (YaiClass)environment.getAt(expr.depth, 0);
 
         // "this" is always one level nearer than "super"'s environment
-        YaiInstance object = (YaiInstance)environment.getAt(distance - 1, "this");
+        YaiInstance object = (YaiInstance)environment.getAt(expr.depth - 1, 0);
         
-        YaiFunction method = superclass.findMethod(expr.method.lexeme);
+        YaiFunction method = superclass.findMethod(expr.method.symbol);
         if(method == null) {
             throw new RuntimeError(expr.method,
                 "Undefined property '" + expr.method.lexeme + "'.");
@@ -348,14 +503,15 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitThisExpr(This expr) {
-        return lookupVariable(expr.keyword, expr);
+        // "this" is the only variable in its scope
+        return environment.getAt(expr.depth, 0);
     }
 
     @Override
     public Object visitLogicalExpr(Logical expr) {
         Object left = evaluate(expr.left);
 
-        if(expr.operator.type == TokenType.OR) {
+        if(expr.operator == TokenType.OR) {
             if(isTruthy(left)) return left;
         } else { // AND
             if(!isTruthy(left)) return left;
@@ -368,11 +524,11 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     public Object visitUnaryExpr(Unary expr) {
         Object right = evaluate(expr.right);
 
-        switch (expr.operator.type) {
+        switch (expr.operator) {
             case BANG:
                 return !isTruthy(right);
             case MINUS:
-                checkNumberOperand(expr.operator, right);
+                checkNumberOperand(expr.line, right);
                 return -(double) right;
             // TODO: this default is not in book
             default:
@@ -385,67 +541,239 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitVariableExpr(Variable expr) {
-        return lookupVariable(expr.name, expr);
+        if(expr.depth != -1) {
+            return environment.getAt(expr.depth, expr.slot);
+        } else {
+            return expr.cell.get(expr.name);
+        }
     }
 
-    private Object lookupVariable(Token name, Expr expr) {
-        Integer distance = locals.get(expr);
-        if(distance != null) {
-            return environment.getAt(distance, name.lexeme);
+    /**
+     * Globals are the only variables still defined by name, every
+     * local declaration was given a slot by the Resolver.
+     */
+    private void define(Token name, int slot, Object value) {
+        if(slot < 0) {
+            globals.define(name.symbol, value);
         } else {
-            return globals.get(name);
+            environment.define(slot, value);
+        }
+    }
+
+    /**
+     * Runs "stmt" with a switch on its kind, which calls each visit method
+     * from a call site of its own. The call of accept() is shared by every
+     * kind of statement, so the JVM can't inline it.
+     */
+    private Completion execute(Stmt stmt) {
+        if(!switchDispatch) return stmt.accept(this);
+
+        switch(stmt.kind) {
+            case Stmt.BLOCK: return visitBlockStmt((Block)stmt);
+            case Stmt.BREAK: return visitBreakStmt((Break)stmt);
+            case Stmt.CLASS: return visitClassStmt((Stmt.Class)stmt);
+            case Stmt.CONTINUE: return visitContinueStmt((Continue)stmt);
+            case Stmt.EXPRESSION: return visitExpressionStmt((Expression)stmt);
+            case Stmt.FOR: return visitForStmt((For)stmt);
+            case Stmt.FUNCTION: return visitFunctionStmt((Function)stmt);
+            case Stmt.IF: return visitIfStmt((If)stmt);
+            case Stmt.PRINT: return visitPrintStmt((Print)stmt);
+            case Stmt.RETURN: return visitReturnStmt((Stmt.Return)stmt);
+            case Stmt.VAR: return visitVarStmt((Var)stmt);
+            case Stmt.WHILE: return visitWhileStmt((While)stmt);
+            default:
+                throw new IllegalStateException("Unknown statement kind " + stmt.kind);
         }
     }
 
-    private void execute(Stmt stmt) {
-        stmt.accept(this);
+    /**
+     * Executes the body of a loop, also completing with a break or continue
+     * in a function called by the body.
+     */
+    private Completion executeLoopBody(Stmt body) {
+        try {
+            return execute(body);
+        } catch(FlowControl flowControl) {
+            return flowControl.keyword.type == TokenType.BREAK
+                ? Completion.BREAK : Completion.CONTINUE;
+        }
     }
 
-    void executeBlock(List<Stmt> statements, Environment environment) {
+    Completion executeBlock(Stmt[] statements, Environment environment) {
         Environment pervious = this.environment;
         try {
             this.environment = environment;
 
             for(Stmt statement: statements) {
-                execute(statement);
+                Completion completion = execute(statement);
+                if(completion != Completion.NORMAL) return completion;
+            }
+            return Completion.NORMAL;
+        } finally {
+            this.environment = pervious;
+        }
+    }
+
+    /**
+     * Same as the other executeBlock(), for the body of a function.
+     */
+    private Completion executeBlock(List<Stmt> statements, Environment environment) {
+        Environment pervious = this.environment;
+        try {
+            this.environment = environment;
+
+            for(Stmt statement: statements) {
+                Completion completion = execute(statement);
+                if(completion != Completion.NORMAL) return completion;
             }
+            return Completion.NORMAL;
         } finally {
             this.environment = pervious;
         }
     }
 
-    private Object evaluate(Expr expr) {
-        return expr.accept(this);
+    /**
+     * Runs the body of a function and returns its return value. A break or
+     * continue not in a loop of the body escapes the call as FlowControl,
+     * for the loops of the callers.
+     */
+    Object executeBody(List<Stmt> statements, Environment environment) {
+        switch(executeBlock(statements, environment)) {
+            case RETURN:
+                Object value = returnValue;
+                returnValue = null;
+                return value;
+            case BREAK:
+            case CONTINUE:
+                throw new FlowControl(jumpKeyword);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Evaluates "expr" with a switch on its kind, like execute().
+     */
+    Object evaluate(Expr expr) {
+        if(!switchDispatch) return expr.accept(this);
+
+        switch(expr.kind) {
+            case Expr.ASSIGN: return visitAssignExpr((Assign)expr);
+            case Expr.BINARY: return visitBinaryExpr((Binary)expr);
+            case Expr.CALL: return visitCallExpr((Call)expr);
+            case Expr.GET: return visitGetExpr((Get)expr);
+            case Expr.GROUPING: return visitGroupingExpr((Grouping)expr);
+            case Expr.INLINE: return visitInlineExpr((Inline)expr);
+            case Expr.INVOKE: return visitInvokeExpr((Invoke)expr);
+            case Expr.LITERAL: return visitLiteralExpr((Literal)expr);
+            case Expr.LOGICAL: return visitLogicalExpr((Logical)expr);
+            case Expr.SET: return visitSetExpr((Set)expr);
+            case Expr.SUPER: return visitSuperExpr((Super)expr);
+            case Expr.THIS: return visitThisExpr((This)expr);
+            case Expr.UNARY: return visitUnaryExpr((Unary)expr);
+            case Expr.VARIABLE: return visitVariableExpr((Variable)expr);
+            default:
+                throw new IllegalStateException("Unknown expression kind " + expr.kind);
+        }
+    }
+
+    private List<Object> evaluateAll(Expr[] expressions) {
+        List<Object> values = new ArrayList<>(expressions.length);
+        for(Expr expr : expressions) {
+            values.add(evaluate(expr));
+        }
+        return values;
+    }
+
+    /**
+     * Evaluates "expr" speculating that it is a number, so specialized
+     * arithmetic and unboxed locals never box their values. Throws
+     * UnexpectedType with the value if it isn't a number.
+     */
+    double evaluateDouble(Expr expr) {
+        if(expr instanceof Binary) {
+            Binary binary = (Binary)expr;
+            if(binary.node != null) {
+                return binary.node.executeDouble(this, binary);
+            }
+        } else if(expr instanceof Variable) {
+            Variable variable = (Variable)expr;
+            if(variable.depth != -1) {
+                return environment.getDoubleAt(variable.depth, variable.slot);
+            }
+        } else if(expr instanceof Literal) {
+            return BinaryNode.expectDouble(((Literal)expr).value);
+        } else if(expr instanceof Grouping) {
+            return evaluateDouble(((Grouping)expr).expression);
+        }
+        return BinaryNode.expectDouble(evaluate(expr));
+    }
+
+    /**
+     * Evaluates "expr" as a condition.
+     */
+    boolean evaluateBoolean(Expr expr) {
+        if(specialize && expr instanceof Binary) {
+            Binary binary = (Binary)expr;
+            if(binary.node != null) {
+                try {
+                    return binary.node.executeBoolean(this, binary);
+                } catch(UnexpectedType unexpected) {
+                    return isTruthy(unexpected.value);
+                }
+            }
+        }
+        return isTruthy(evaluate(expr));
+    }
+
+    private boolean isSpeculatedDouble(Expr expr) {
+        if(expr instanceof Binary) {
+            BinaryNode node = ((Binary)expr).node;
+            return node != null && node.producesDouble();
+        }
+        return expr instanceof Literal && ((Literal)expr).value instanceof Double;
     }
 
-    private boolean isTruthy(Object object) {
+    static boolean isTruthy(Object object) {
         if(object == null) return false;
         if(object instanceof Boolean) return (boolean)object;
         return true;
     }
 
-    private boolean isEqual(Object left, Object right) {
+    static boolean isEqual(Object left, Object right) {
         // null is only equal to null
         if(left == null && right == null) return true;
         if(left == null || right == null) return false;
-        // NaN != NaN
-        if(left.equals(Double.NaN) && right.equals(Double.NaN)) {
+        // NaN != NaN, checked without boxing Double.NaN for every comparison
+        if(left instanceof Double && ((Double)left).isNaN()) {
             return false;
         }
+        // A string can be a String or a Rope
+        if(left instanceof CharSequence && right instanceof CharSequence) {
+            return left.toString().equals(right.toString());
+        }
         return left.equals(right);
     }
 
-    private void checkNumberOperand(Token operator, Object operand) {
+    private void checkArity(YaiCallable function, int line, List<Object> arguments) {
+        if(arguments.size() != function.arity()) {
+            throw new RuntimeError(line, "Expected "
+                + function.arity() + " arguments but got "
+                + arguments.size() + ".");
+        }
+    }
+
+    private void checkNumberOperand(int line, Object operand) {
         if(operand instanceof Double) return;
-        throw new RuntimeError(operator, "Operand must be a number.");
+        throw new RuntimeError(line, "Operand must be a number.");
     }
 
-    private void checkNumberOperands(Token operator, Object left, Object right) {
+    private static void checkNumberOperands(int line, Object left, Object right) {
         if(left instanceof Double && right instanceof Double) return;
-        throw new RuntimeError(operator, "Operands must be a number.");
+        throw new RuntimeError(line, "Operands must be a number.");
     }
 
-    private String stringify(Object object) {
+    static String stringify(Object object) {
         if(object == null) return "nil";
 
         // Work around Java adding ".0" to integer-valued doubles
@@ -459,8 +787,4 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
         return object.toString();
     }
-
-    void resolve(Expr expr, int depth) {
-        locals.put(expr, depth);
-    }
 }
\ No newline at end of file
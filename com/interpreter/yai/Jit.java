@@ -0,0 +1,697 @@
+package com.interpreter.yai;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.interpreter.yai.ClassFile.*;
+
+/**
+ * Compiles the body of a hot function to a JVM class, so HotSpot can
+ * optimize it like any other Java code.
+ *
+ * A Stmt.Function is compiled once it has been called "threshold" times,
+ * by any of its closures. The generated class is a hidden class in this
+ * package implementing JitCode. It uses the same Environment objects as
+ * the Interpreter, so closures created by compiled code and by the
+ * Interpreter can freely call each other, but the scopes of the function
+ * itself are kept in JVM locals and blocks without declarations don't
+ * allocate an Environment at all.
+ *
+ * Functions using something the Jit doesn't support (class declarations)
+ * keep running in the Interpreter.
+ */
+class Jit {
+    private static final String PACKAGE = "com/interpreter/yai/";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String INTERPRETER = PACKAGE + "Interpreter";
+    private static final String ENVIRONMENT = PACKAGE + "Environment";
+    private static final String RUNTIME = PACKAGE + "JitRuntime";
+    private static final String TOKEN = PACKAGE + "Token";
+    private static final String GLOBAL_CELL = PACKAGE + "GlobalCell";
+
+    private static final String OBJECT_DESC = "L" + OBJECT + ";";
+    private static final String ENVIRONMENT_DESC = "L" + ENVIRONMENT + ";";
+    private static final String TOKEN_DESC = "L" + TOKEN + ";";
+    // Operations take the line of the operator, for their errors
+    private static final String BINARY_DESC =
+        "(I" + OBJECT_DESC + OBJECT_DESC + ")" + OBJECT_DESC;
+
+    // Locals of the compiled "invoke" method
+    private static final int THIS = 0;
+    private static final int INTERPRETER_LOCAL = 1;
+    private static final int ENVIRONMENT_LOCAL = 2;
+    private static final int SLOTS_LOCAL = 3;
+    private static final int CONSTANTS_LOCAL = 4;
+    private static final int TEMP_LOCAL = 5;
+    private static final int FIRST_FREE_LOCAL = 6;
+
+    private final int threshold;
+
+    Jit(int threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Counts a call to "function" and compiles it when it gets hot. Returns
+     * the compiled code, or null if the function should be interpreted.
+     */
+    JitCode compileIfHot(Stmt.Function function) {
+        if(++function.calls != threshold) return null;
+        function.code = compile(function);
+        return function.code;
+    }
+
+    private JitCode compile(Stmt.Function function) {
+        FunctionCompiler compiler = new FunctionCompiler();
+        byte[] bytes;
+        try {
+            bytes = compiler.compile(function);
+        } catch(Unsupported | IllegalArgumentException error) {
+            return null;
+        }
+
+        try {
+            Class<?> hidden = MethodHandles.lookup().defineHiddenClass(bytes, true).lookupClass();
+            return (JitCode)hidden.getDeclaredConstructor(Object[].class)
+                .newInstance((Object)compiler.constants.toArray());
+        } catch(ReflectiveOperationException error) {
+            throw new IllegalStateException(error);
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static class Unsupported extends RuntimeException {
+        Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * A scope of the function being compiled. A scope without declarations
+     * has no Environment of its own unless a nested scope or closure needs
+     * it in its chain.
+     */
+    private static class Scope {
+        final int environment;
+        final int slots;
+        final boolean empty;
+
+        Scope(int environment, int slots, boolean empty) {
+            this.environment = environment;
+            this.slots = slots;
+            this.empty = empty;
+        }
+    }
+
+    private static class Loop {
+        final Label breakLabel = new Label();
+        final Label continueLabel = new Label();
+    }
+
+    private static class FunctionCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+        final List<Object> constants = new ArrayList<>();
+        private final List<Scope> scopes = new ArrayList<>();
+        private final List<Loop> loops = new ArrayList<>();
+        private int nextLocal = FIRST_FREE_LOCAL;
+        private ClassFile.Code code;
+
+        byte[] compile(Stmt.Function function) {
+            String name = PACKAGE + "Compiled$" + function.name.lexeme;
+            ClassFile file = new ClassFile(ACC_FINAL | ACC_SUPER, name, OBJECT,
+                PACKAGE + "JitCode");
+            file.addField(ACC_PRIVATE | ACC_FINAL, "constants", "[" + OBJECT_DESC);
+
+            ClassFile.Code init = file.addMethod(0, "<init>", "([" + OBJECT_DESC + ")V", 2);
+            init.load(THIS);
+            init.invoke(INVOKESPECIAL, OBJECT, "<init>", "()V");
+            init.load(THIS);
+            init.load(1);
+            init.field(PUTFIELD, name, "constants", "[" + OBJECT_DESC);
+            init.insn(RETURN);
+
+            code = file.addMethod(ACC_PUBLIC, "invoke",
+                "(L" + INTERPRETER + ";" + ENVIRONMENT_DESC + ")" + OBJECT_DESC, 3);
+            code.load(ENVIRONMENT_LOCAL);
+            code.field(GETFIELD, ENVIRONMENT, "slots", "[" + OBJECT_DESC);
+            code.store(SLOTS_LOCAL);
+            code.load(THIS);
+            code.field(GETFIELD, name, "constants", "[" + OBJECT_DESC);
+            code.store(CONSTANTS_LOCAL);
+
+            scopes.add(new Scope(ENVIRONMENT_LOCAL, SLOTS_LOCAL, false));
+            for(Stmt statement : function.body) {
+                compile(statement);
+            }
+            code.insn(ACONST_NULL);
+            code.insn(ARETURN);
+
+            return file.toByteArray();
+        }
+
+        @Override
+        public Void visitBlockStmt(Stmt.Block stmt) {
+            int locals = nextLocal;
+            beginScope(stmt.scopeSize);
+            for(Stmt statement : stmt.statements) {
+                compile(statement);
+            }
+            scopes.remove(scopes.size() - 1);
+            nextLocal = locals;
+            return null;
+        }
+
+        @Override
+        public Void visitBreakStmt(Stmt.Break stmt) {
+            jumpOrThrow(stmt.keyword, true);
+            return null;
+        }
+
+        @Override
+        public Void visitClassStmt(Stmt.Class stmt) {
+            throw new Unsupported();
+        }
+
+        @Override
+        public Void visitContinueStmt(Stmt.Continue stmt) {
+            jumpOrThrow(stmt.keyword, false);
+            return null;
+        }
+
+        @Override
+        public Void visitExpressionStmt(Stmt.Expression stmt) {
+            compile(stmt.expression);
+            code.insn(POP);
+            return null;
+        }
+
+        @Override
+        public Void visitForStmt(Stmt.For stmt) {
+            int locals = nextLocal;
+            beginScope(stmt.scopeSize);
+            if(stmt.initializer != null) {
+                compile(stmt.initializer);
+            }
+            loop(stmt.condition, stmt.body, stmt.increment);
+            scopes.remove(scopes.size() - 1);
+            nextLocal = locals;
+            return null;
+        }
+
+        @Override
+        public Void visitFunctionStmt(Stmt.Function stmt) {
+            String function = PACKAGE + "YaiFunction";
+            beginDefine(stmt.name, stmt.slot);
+            code.type(NEW, function);
+            code.insn(DUP);
+            constant(stmt, PACKAGE + "Stmt$Function");
+            loadEnvironment();
+            code.push(0);
+            code.invoke(INVOKESPECIAL, function, "<init>",
+                "(L" + PACKAGE + "Stmt$Function;" + ENVIRONMENT_DESC + "Z)V");
+            endDefine(stmt.slot);
+            return null;
+        }
+
+        @Override
+        public Void visitIfStmt(Stmt.If stmt) {
+            Label elseLabel = new Label();
+            Label end = new Label();
+            condition(stmt.condition, elseLabel);
+            compile(stmt.thenBranch);
+            code.jump(GOTO, end);
+            code.mark(elseLabel);
+            if(stmt.elseBranch != null) {
+                compile(stmt.elseBranch);
+            }
+            code.mark(end);
+            return null;
+        }
+
+        @Override
+        public Void visitPrintStmt(Stmt.Print stmt) {
+            code.field(GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+            compile(stmt.expression);
+            code.invoke(INVOKESTATIC, INTERPRETER, "stringify",
+                "(" + OBJECT_DESC + ")Ljava/lang/String;");
+            code.invoke(INVOKEVIRTUAL, "java/io/PrintStream", "println", "(Ljava/lang/String;)V");
+            return null;
+        }
+
+        @Override
+        public Void visitReturnStmt(Stmt.Return stmt) {
+            if(stmt.tail && stmt.value instanceof Expr.Call) {
+                call((Expr.Call)stmt.value, "tailCall");
+            } else if(stmt.tail && stmt.value instanceof Expr.Invoke) {
+                invoke((Expr.Invoke)stmt.value, "tailInvoke");
+            } else if(stmt.value != null) {
+                compile(stmt.value);
+            } else {
+                code.insn(ACONST_NULL);
+            }
+            code.insn(ARETURN);
+            return null;
+        }
+
+        @Override
+        public Void visitVarStmt(Stmt.Var stmt) {
+            beginDefine(stmt.name, stmt.slot);
+            if(stmt.initializer != null) {
+                compile(stmt.initializer);
+            } else {
+                code.insn(ACONST_NULL);
+            }
+            endDefine(stmt.slot);
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStmt(Stmt.While stmt) {
+            loop(stmt.condition, stmt.body, null);
+            return null;
+        }
+
+        @Override
+        public Void visitAssignExpr(Expr.Assign expr) {
+            compile(expr.value);
+            code.insn(DUP);
+            code.store(TEMP_LOCAL);
+            if(expr.depth != -1) {
+                loadSlots(expr.depth);
+                code.push(expr.slot);
+                code.load(TEMP_LOCAL);
+                code.insn(AASTORE);
+            } else {
+                constant(expr.cell, GLOBAL_CELL);
+                constant(expr.name, TOKEN);
+                code.load(TEMP_LOCAL);
+                code.invoke(INVOKEVIRTUAL, GLOBAL_CELL, "assign", "(" + TOKEN_DESC + OBJECT_DESC + ")V");
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr) {
+            String method;
+            switch(expr.operator) {
+                case PLUS: method = "add"; break;
+                case MINUS: method = "subtract"; break;
+                case STAR: method = "multiply"; break;
+                case SLASH: method = "divide"; break;
+                case LESS: method = "less"; break;
+                case LESS_EQUAL: method = "lessEqual"; break;
+                case GREATER: method = "greater"; break;
+                case GREATER_EQUAL: method = "greaterEqual"; break;
+                case EQUAL_EQUAL:
+                case BANG_EQUAL:
+                    compile(expr.left);
+                    compile(expr.right);
+                    code.invoke(INVOKESTATIC, RUNTIME,
+                        expr.operator == TokenType.EQUAL_EQUAL ? "equal" : "notEqual",
+                        "(" + OBJECT_DESC + OBJECT_DESC + ")" + OBJECT_DESC);
+                    return null;
+                default:
+                    throw new Unsupported();
+            }
+
+            code.push(expr.line);
+            compile(expr.left);
+            compile(expr.right);
+            code.invoke(INVOKESTATIC, RUNTIME, method, BINARY_DESC);
+            return null;
+        }
+
+        @Override
+        public Void visitCallExpr(Expr.Call expr) {
+            call(expr, "call");
+            return null;
+        }
+
+        /**
+         * Calls Interpreter.call() or tailCall() for "expr".
+         */
+        private void call(Expr.Call expr, String method) {
+            code.load(INTERPRETER_LOCAL);
+            compile(expr.callee);
+            code.push(expr.line);
+            arguments(expr.arguments);
+            code.invoke(INVOKEVIRTUAL, INTERPRETER, method,
+                "(" + OBJECT_DESC + "ILjava/util/List;)" + OBJECT_DESC);
+        }
+
+        @Override
+        public Void visitGetExpr(Expr.Get expr) {
+            compile(expr.object);
+            constant(expr, PACKAGE + "Expr$Get");
+            code.invoke(INVOKESTATIC, RUNTIME, "get",
+                "(" + OBJECT_DESC + "L" + PACKAGE + "Expr$Get;)" + OBJECT_DESC);
+            return null;
+        }
+
+        /**
+         * Same guard as the Interpreter, the call is made when the global
+         * doesn't hold the inlined function any more.
+         */
+        @Override
+        public Void visitInlineExpr(Expr.Inline expr) {
+            Label call = new Label();
+            Label end = new Label();
+            compile(expr.call.callee);
+            constant(expr.function, PACKAGE + "Stmt$Function");
+            code.invoke(INVOKESTATIC, RUNTIME, "inlined",
+                "(" + OBJECT_DESC + "L" + PACKAGE + "Stmt$Function;)Z");
+            code.jump(IFEQ, call);
+            compile(expr.body);
+            code.jump(GOTO, end);
+            code.mark(call);
+            code.setStack(code.stack() - 1);
+            compile(expr.call);
+            code.mark(end);
+            return null;
+        }
+
+        @Override
+        public Void visitInvokeExpr(Expr.Invoke expr) {
+            invoke(expr, "invoke");
+            return null;
+        }
+
+        /**
+         * Calls Interpreter.invoke() or tailInvoke() for "expr".
+         */
+        private void invoke(Expr.Invoke expr, String method) {
+            code.load(INTERPRETER_LOCAL);
+            compile(expr.object);
+            code.insn(DUP);
+            code.load(INTERPRETER_LOCAL);
+            code.insn(SWAP);
+            constant(expr, PACKAGE + "Expr$Invoke");
+            code.invoke(INVOKEVIRTUAL, INTERPRETER, "property",
+                "(" + OBJECT_DESC + "L" + PACKAGE + "Expr$Invoke;)" + OBJECT_DESC);
+            code.push(expr.line);
+            arguments(expr.arguments);
+            code.invoke(INVOKEVIRTUAL, INTERPRETER, method,
+                "(" + OBJECT_DESC + OBJECT_DESC + "ILjava/util/List;)" + OBJECT_DESC);
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr) {
+            compile(expr.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            if(expr.value == null) {
+                code.insn(ACONST_NULL);
+            } else if(expr.value instanceof Boolean) {
+                code.field(GETSTATIC, "java/lang/Boolean",
+                    (boolean)expr.value ? "TRUE" : "FALSE", "Ljava/lang/Boolean;");
+            } else if(expr.value instanceof String) {
+                code.ldc((String)expr.value);
+            } else {
+                constant(expr.value, OBJECT);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitLogicalExpr(Expr.Logical expr) {
+            Label end = new Label();
+            compile(expr.left);
+            code.insn(DUP);
+            truthy();
+            code.jump(expr.operator == TokenType.OR ? IFNE : IFEQ, end);
+            code.insn(POP);
+            compile(expr.right);
+            code.mark(end);
+            return null;
+        }
+
+        @Override
+        public Void visitSetExpr(Expr.Set expr) {
+            compile(expr.object);
+            constant(expr.name, TOKEN);
+            code.invoke(INVOKESTATIC, RUNTIME, "instance",
+                "(" + OBJECT_DESC + TOKEN_DESC + ")L" + PACKAGE + "YaiInstance;");
+            compile(expr.value);
+            // Leave the value as the result of the expression
+            code.insn(DUP_X1);
+            constant(expr, PACKAGE + "Expr$Set");
+            code.invoke(INVOKESTATIC, RUNTIME, "set",
+                "(L" + PACKAGE + "YaiInstance;" + OBJECT_DESC + "L" + PACKAGE + "Expr$Set;)V");
+            return null;
+        }
+
+        @Override
+        public Void visitSuperExpr(Expr.Super expr) {
+            loadSlots(expr.depth);
+            code.push(0);
+            code.insn(AALOAD);
+            // "this" is always one level nearer than "super"'s environment
+            loadSlots(expr.depth - 1);
+            code.push(0);
+            code.insn(AALOAD);
+            constant(expr.method, TOKEN);
+            code.invoke(INVOKESTATIC, RUNTIME, "superMethod",
+                "(" + OBJECT_DESC + OBJECT_DESC + TOKEN_DESC + ")" + OBJECT_DESC);
+            return null;
+        }
+
+        @Override
+        public Void visitThisExpr(Expr.This expr) {
+            loadSlots(expr.depth);
+            code.push(0);
+            code.insn(AALOAD);
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr) {
+            if(expr.operator == TokenType.MINUS) {
+                code.push(expr.line);
+                compile(expr.right);
+                code.invoke(INVOKESTATIC, RUNTIME, "negate",
+                    "(I" + OBJECT_DESC + ")" + OBJECT_DESC);
+            } else {
+                compile(expr.right);
+                code.invoke(INVOKESTATIC, RUNTIME, "not",
+                    "(" + OBJECT_DESC + ")" + OBJECT_DESC);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitVariableExpr(Expr.Variable expr) {
+            if(expr.depth != -1) {
+                loadSlots(expr.depth);
+                code.push(expr.slot);
+                code.insn(AALOAD);
+            } else {
+                constant(expr.cell, GLOBAL_CELL);
+                constant(expr.name, TOKEN);
+                code.invoke(INVOKEVIRTUAL, GLOBAL_CELL, "get",
+                    "(" + TOKEN_DESC + ")" + OBJECT_DESC);
+            }
+            return null;
+        }
+
+        private void compile(Stmt stmt) {
+            stmt.accept(this);
+        }
+
+        private void compile(Expr expr) {
+            expr.accept(this);
+        }
+
+        /**
+         * Pushes a List with the values of "arguments".
+         */
+        private void arguments(Expr[] arguments) {
+            code.type(NEW, "java/util/ArrayList");
+            code.insn(DUP);
+            code.push(arguments.length);
+            code.invoke(INVOKESPECIAL, "java/util/ArrayList", "<init>", "(I)V");
+            for(Expr argument : arguments) {
+                code.insn(DUP);
+                compile(argument);
+                code.invoke(INVOKEINTERFACE, "java/util/List", "add", "(" + OBJECT_DESC + ")Z");
+                code.insn(POP);
+            }
+        }
+
+        /**
+         * Opens the scope of a block, only a scope declaring variables gets
+         * an environment.
+         */
+        private void beginScope(int size) {
+            if(size == 0) {
+                scopes.add(new Scope(-1, -1, true));
+                return;
+            }
+            Scope scope = new Scope(nextLocal++, nextLocal++, false);
+            code.type(NEW, ENVIRONMENT);
+            code.insn(DUP);
+            loadEnvironment();
+            code.push(size);
+            code.invoke(INVOKESPECIAL, ENVIRONMENT, "<init>", "(" + ENVIRONMENT_DESC + "I)V");
+            code.insn(DUP);
+            code.store(scope.environment);
+            code.field(GETFIELD, ENVIRONMENT, "slots", "[" + OBJECT_DESC);
+            code.store(scope.slots);
+            scopes.add(scope);
+        }
+
+        /**
+         * Same as the Interpreter: break and continue caught in the body
+         * leave the loop or run the increment before the next iteration.
+         * Those in the body itself are plain jumps, the exception handler
+         * only sees the ones thrown by called functions.
+         */
+        private void loop(Expr condition, Stmt body, Stmt increment) {
+            Loop loop = new Loop();
+            Label start = new Label();
+            Label bodyStart = new Label();
+            Label bodyEnd = new Label();
+            Label handler = new Label();
+
+            code.mark(start);
+            condition(condition, loop.breakLabel);
+
+            loops.add(loop);
+            code.mark(bodyStart);
+            compile(body);
+            code.mark(bodyEnd);
+            loops.remove(loops.size() - 1);
+            code.jump(GOTO, loop.continueLabel);
+
+            code.mark(handler);
+            code.setStack(1);
+            code.field(GETFIELD, PACKAGE + "FlowControl", "keyword", TOKEN_DESC);
+            code.field(GETFIELD, TOKEN, "type", "L" + PACKAGE + "TokenType;");
+            code.field(GETSTATIC, PACKAGE + "TokenType", "BREAK", "L" + PACKAGE + "TokenType;");
+            code.jump(IF_ACMPEQ, loop.breakLabel);
+            code.handler(bodyStart, bodyEnd, handler, PACKAGE + "FlowControl");
+
+            code.mark(loop.continueLabel);
+            if(increment != null) {
+                compile(increment);
+            }
+            code.jump(GOTO, start);
+
+            code.mark(loop.breakLabel);
+        }
+
+        /**
+         * Jumps to "target" if "expr" is falsey.
+         */
+        private void condition(Expr expr, Label target) {
+            compile(expr);
+            truthy();
+            code.jump(IFEQ, target);
+        }
+
+        private void truthy() {
+            code.invoke(INVOKESTATIC, INTERPRETER, "isTruthy", "(" + OBJECT_DESC + ")Z");
+        }
+
+        private void jumpOrThrow(Token keyword, boolean isBreak) {
+            if(!loops.isEmpty()) {
+                Loop loop = loops.get(loops.size() - 1);
+                code.jump(GOTO, isBreak ? loop.breakLabel : loop.continueLabel);
+                return;
+            }
+
+            // Not in a loop of this function, let the callers handle it
+            String flowControl = PACKAGE + "FlowControl";
+            code.type(NEW, flowControl);
+            code.insn(DUP);
+            constant(keyword, TOKEN);
+            code.invoke(INVOKESPECIAL, flowControl, "<init>", "(" + TOKEN_DESC + ")V");
+            code.insn(ATHROW);
+        }
+
+        /**
+         * Locals are stored as "slots[slot] = value", this pushes the
+         * array and index, endDefine() stores the value on top of them.
+         * Declarations in a function are never global, but the
+         * Interpreter's fallback is kept for completeness.
+         */
+        private void beginDefine(Token name, int slot) {
+            if(slot < 0) {
+                loadGlobals();
+                constant(name.symbol, PACKAGE + "Symbol");
+            } else {
+                loadSlots(0);
+                code.push(slot);
+            }
+        }
+
+        private void endDefine(int slot) {
+            if(slot < 0) {
+                code.invoke(INVOKEVIRTUAL, ENVIRONMENT, "define",
+                    "(L" + PACKAGE + "Symbol;" + OBJECT_DESC + ")V");
+            } else {
+                code.insn(AASTORE);
+            }
+        }
+
+        private void loadGlobals() {
+            code.load(INTERPRETER_LOCAL);
+            code.field(GETFIELD, INTERPRETER, "globals", ENVIRONMENT_DESC);
+        }
+
+        /**
+         * Pushes the slots of the scope "depth" levels out, either from a
+         * local of this function or by walking up its closure.
+         */
+        private void loadSlots(int depth) {
+            if(depth < scopes.size()) {
+                Scope scope = scopes.get(scopes.size() - 1 - depth);
+                // Nothing was resolved to a scope without declarations
+                if(scope.empty) throw new Unsupported();
+                code.load(scope.slots);
+                return;
+            }
+
+            code.load(ENVIRONMENT_LOCAL);
+            for(int i = scopes.size() - 1; i < depth; i++) {
+                code.field(GETFIELD, ENVIRONMENT, "enclosing", ENVIRONMENT_DESC);
+            }
+            code.field(GETFIELD, ENVIRONMENT, "slots", "[" + OBJECT_DESC);
+        }
+
+        /**
+         * Pushes the Environment of the innermost scope, creating one for
+         * each empty scope so the chain has the length the Resolver
+         * expects.
+         */
+        private void loadEnvironment() {
+            int index = scopes.size() - 1;
+            while(scopes.get(index).empty) index--;
+            code.load(scopes.get(index).environment);
+
+            for(int i = index + 1; i < scopes.size(); i++) {
+                code.type(NEW, ENVIRONMENT);
+                code.insn(DUP_X1);
+                code.insn(SWAP);
+                code.push(0);
+                code.invoke(INVOKESPECIAL, ENVIRONMENT, "<init>", "(" + ENVIRONMENT_DESC + "I)V");
+            }
+        }
+
+        private void constant(Object value, String type) {
+            int index = constants.indexOf(value);
+            if(index == -1) {
+                index = constants.size();
+                constants.add(value);
+            }
+            code.load(CONSTANTS_LOCAL);
+            code.push(index);
+            code.insn(AALOAD);
+            if(!type.equals(OBJECT)) {
+                code.type(CHECKCAST, type);
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,9 @@
+package com.interpreter.yai;
+
+/**
+ * Body of a Stmt.Function compiled by the Jit. The environment is the
+ * function's own scope, with the arguments already in their slots.
+ */
+interface JitCode {
+    Object invoke(Interpreter interpreter, Environment environment);
+}
\ No newline at end of file
@@ -0,0 +1,122 @@
+package com.interpreter.yai;
+
+/**
+ * Operations called from code compiled by the Jit. Each one handles the
+ * common case inline and leaves the rest to the Interpreter, so the error
+ * messages stay the same.
+ */
+final class JitRuntime {
+    private JitRuntime() {}
+
+    static Object add(int line, Object left, Object right) {
+        if(left instanceof Double && right instanceof Double) {
+            return (double)left + (double)right;
+        }
+        return Interpreter.binary(TokenType.PLUS, line, left, right);
+    }
+
+    static Object subtract(int line, Object left, Object right) {
+        if(left instanceof Double && right instanceof Double) {
+            return (double)left - (double)right;
+        }
+        return Interpreter.binary(TokenType.MINUS, line, left, right);
+    }
+
+    static Object multiply(int line, Object left, Object right) {
+        if(left instanceof Double && right instanceof Double) {
+            return (double)left * (double)right;
+        }
+        return Interpreter.binary(TokenType.STAR, line, left, right);
+    }
+
+    static Object divide(int line, Object left, Object right) {
+        if(left instanceof Double && right instanceof Double) {
+            return (double)left / (double)right;
+        }
+        return Interpreter.binary(TokenType.SLASH, line, left, right);
+    }
+
+    static Object less(int line, Object left, Object right) {
+        if(left instanceof Double && right instanceof Double) {
+            return (double)left < (double)right;
+        }
+        return Interpreter.binary(TokenType.LESS, line, left, right);
+    }
+
+    static Object lessEqual(int line, Object left, Object right) {
+        if(left instanceof Double && right instanceof Double) {
+            return (double)left <= (double)right;
+        }
+        return Interpreter.binary(TokenType.LESS_EQUAL, line, left, right);
+    }
+
+    static Object greater(int line, Object left, Object right) {
+        if(left instanceof Double && right instanceof Double) {
+            return (double)left > (double)right;
+        }
+        return Interpreter.binary(TokenType.GREATER, line, left, right);
+    }
+
+    static Object greaterEqual(int line, Object left, Object right) {
+        if(left instanceof Double && right instanceof Double) {
+            return (double)left >= (double)right;
+        }
+        return Interpreter.binary(TokenType.GREATER_EQUAL, line, left, right);
+    }
+
+    static Object equal(Object left, Object right) {
+        return Interpreter.isEqual(left, right);
+    }
+
+    static Object notEqual(Object left, Object right) {
+        return !Interpreter.isEqual(left, right);
+    }
+
+    static Object negate(int line, Object right) {
+        if(right instanceof Double) {
+            return -(double)right;
+        }
+        throw new RuntimeError(line, "Operand must be a number.");
+    }
+
+    static Object not(Object right) {
+        return !Interpreter.isTruthy(right);
+    }
+
+    /**
+     * Guard of an Expr.Inline, see Interpreter.visitInlineExpr().
+     */
+    static boolean inlined(Object callee, Stmt.Function function) {
+        return callee instanceof YaiFunction && ((YaiFunction)callee).isDeclaredBy(function);
+    }
+
+    static Object get(Object object, Expr.Get expr) {
+        if(object instanceof YaiInstance) {
+            return expr.cache.get((YaiInstance)object, expr.name);
+        }
+        throw new RuntimeError(expr.name, "Only instances have properties.");
+    }
+
+    /**
+     * Checks the target of a Set before its value is evaluated.
+     */
+    static YaiInstance instance(Object object, Token name) {
+        if(object instanceof YaiInstance) {
+            return (YaiInstance)object;
+        }
+        throw new RuntimeError(name, "Only instances have fields.");
+    }
+
+    static void set(YaiInstance instance, Object value, Expr.Set expr) {
+        expr.cache.set(instance, expr.name, value);
+    }
+
+    static Object superMethod(Object superclass, Object object, Token method) {
+        YaiFunction function = ((YaiClass)superclass).findMethod(method.symbol);
+        if(function == null) {
+            throw new RuntimeError(method,
+                "Undefined property '" + method.lexeme + "'.");
+        }
+        return function.bind((YaiInstance)object);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,61 @@
+package com.interpreter.yai;
+
+import java.util.List;
+
+/**
+ * Body of a top-level function or method the Parser skipped with "--lazy",
+ * from the "{" to the "}" of the source.
+ *
+ * It is scanned, parsed and resolved on the first call of the function,
+ * so a script only pays for the functions it runs. The lines of the errors
+ * are the lines of the script, as the Scanner starts at the line of "{".
+ */
+final class LazyBody {
+    /**
+     * Thrown by the call after the errors in the body are reported, which
+     * stops the script as an error at load time would.
+     */
+    @SuppressWarnings("serial")
+    static class Failure extends RuntimeException {}
+
+    private final String source;
+    private final int start;
+    private final int end;
+    private final int line;
+    // Set by the Resolver, for "super" in a method
+    boolean inSubclass;
+
+    LazyBody(String source, int start, int end, int line) {
+        this.source = source;
+        this.start = start;
+        this.end = end;
+        this.line = line;
+    }
+
+    /**
+     * Fills the body of "function" and resolves it, before its first call.
+     */
+    static void load(Stmt.Function function, Environment globals) {
+        LazyBody lazy = function.lazyBody;
+        List<Stmt> body = lazy.parse();
+        if(Yai.hadError) throw new Failure();
+
+        function.body.addAll(body);
+        function.lazyBody = null;
+        new Resolver(globals).resolveLazy(function, lazy.inSubclass);
+        if(Yai.hadError) {
+            // Fails the same way on the next call from the prompt
+            function.body.clear();
+            function.lazyBody = lazy;
+            throw new Failure();
+        }
+    }
+
+    /**
+     * Scans and parses the body, reporting its syntax errors.
+     */
+    List<Stmt> parse() {
+        Scanner scanner = new Scanner(source.substring(start, end), line);
+        return new Parser(scanner.scanTokens()).body();
+    }
+}
\ No newline at end of file
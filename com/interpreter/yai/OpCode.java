@@ -0,0 +1,73 @@
+package com.interpreter.yai;
+
+/**
+ * Instruction set of the VM.
+ *
+ * Plain byte constants instead of an enum so the VM loop can switch
+ * directly on the bytes of a Chunk. Operands follow the opcode, "short"
+ * operands are two bytes, big-endian.
+ */
+final class OpCode {
+    static final byte CONSTANT = 0;         // short: constant index
+    static final byte NIL = 1;
+    static final byte TRUE = 2;
+    static final byte FALSE = 3;
+    static final byte POP = 4;
+    static final byte GET_LOCAL = 5;        // short: stack slot
+    static final byte SET_LOCAL = 6;        // short: stack slot
+    static final byte GET_GLOBAL = 7;       // short: global slot
+    static final byte DEFINE_GLOBAL = 8;    // short: global slot
+    static final byte SET_GLOBAL = 9;       // short: global slot
+    static final byte GET_UPVALUE = 10;     // short: upvalue index
+    static final byte SET_UPVALUE = 11;     // short: upvalue index
+    static final byte GET_PROPERTY = 12;    // short: name constant
+    static final byte SET_PROPERTY = 13;    // short: name constant
+    static final byte GET_SUPER = 14;       // short: name constant
+    static final byte EQUAL = 15;
+    static final byte NOT_EQUAL = 16;
+    static final byte GREATER = 17;
+    static final byte GREATER_EQUAL = 18;
+    static final byte LESS = 19;
+    static final byte LESS_EQUAL = 20;
+    static final byte ADD = 21;
+    static final byte SUBTRACT = 22;
+    static final byte MULTIPLY = 23;
+    static final byte DIVIDE = 24;
+    static final byte NOT = 25;
+    static final byte NEGATE = 26;
+    static final byte PRINT = 27;
+    static final byte JUMP = 28;            // short: forward offset
+    static final byte JUMP_IF_FALSE = 29;   // short: forward offset
+    static final byte JUMP_IF_TRUE = 30;    // short: forward offset
+    static final byte LOOP = 31;            // short: backward offset
+    static final byte CALL = 32;            // byte: argument count
+    static final byte CLOSURE = 33;         // short: function constant, then
+                                            // (byte isLocal, short index)
+                                            // for every upvalue
+    static final byte CLOSE_UPVALUE = 34;
+    static final byte RETURN = 35;
+    static final byte CLASS = 36;           // short: name constant
+    static final byte INHERIT = 37;
+    static final byte METHOD = 38;          // short: name constant
+    static final byte LOOP_ENTER = 39;      // short: break offset,
+                                            // short: continue offset
+    static final byte LOOP_EXIT = 40;
+    static final byte BREAK = 41;
+    static final byte CONTINUE = 42;
+
+    // Shortcuts for common pairs of instructions
+    static final byte POP_JUMP_IF_FALSE = 43;   // short: forward offset
+    static final byte STORE_LOCAL = 44;         // short: stack slot
+    static final byte STORE_GLOBAL = 45;        // short: global slot
+    static final byte STORE_UPVALUE = 46;       // short: upvalue index
+    // Compare and jump when the comparison is false, popping both operands
+    static final byte JUMP_IF_NOT_GREATER = 47;         // short: forward offset
+    static final byte JUMP_IF_NOT_GREATER_EQUAL = 48;   // short: forward offset
+    static final byte JUMP_IF_NOT_LESS = 49;            // short: forward offset
+    static final byte JUMP_IF_NOT_LESS_EQUAL = 50;      // short: forward offset
+    // Arithmetic with a number constant as the right operand
+    static final byte ADD_CONSTANT = 51;        // short: constant index
+    static final byte SUBTRACT_CONSTANT = 52;   // short: constant index
+
+    private OpCode() {}
+}
\ No newline at end of file
@@ -0,0 +1,494 @@
+package com.interpreter.yai;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.interpreter.yai.Expr.Assign;
+import com.interpreter.yai.Expr.Binary;
+import com.interpreter.yai.Expr.Call;
+import com.interpreter.yai.Expr.Get;
+import com.interpreter.yai.Expr.Grouping;
+import com.interpreter.yai.Expr.Inline;
+import com.interpreter.yai.Expr.Invoke;
+import com.interpreter.yai.Expr.Literal;
+import com.interpreter.yai.Expr.Logical;
+import com.interpreter.yai.Expr.Set;
+import com.interpreter.yai.Expr.Super;
+import com.interpreter.yai.Expr.This;
+import com.interpreter.yai.Expr.Unary;
+import com.interpreter.yai.Expr.Variable;
+import com.interpreter.yai.Stmt.Block;
+import com.interpreter.yai.Stmt.Break;
+import com.interpreter.yai.Stmt.Continue;
+import com.interpreter.yai.Stmt.Expression;
+import com.interpreter.yai.Stmt.For;
+import com.interpreter.yai.Stmt.Function;
+import com.interpreter.yai.Stmt.If;
+import com.interpreter.yai.Stmt.Print;
+import com.interpreter.yai.Stmt.Return;
+import com.interpreter.yai.Stmt.Var;
+import com.interpreter.yai.Stmt.While;
+
+/**
+ * Simplifies the resolved AST before it runs.
+ *
+ * Operators on literals are folded, unless they would fail, so the error
+ * is still reported at runtime. Branches on a literal condition and
+ * statements after a return, break or continue are removed. Locals that
+ * are never assigned after their declaration are replaced by the value of
+ * a literal initializer, and locals with a pure initializer that nothing
+ * reads are removed. Calls of small top-level functions are inlined, see
+ * Inliner.
+ *
+ * The tree is walked twice. The first walk folds and counts the reads and
+ * assignments of every local, the second one uses the counts. Nodes with
+ * final fields are rebuilt when one of their children changes, and so are
+ * arrays of arguments, which the bodies of inlined calls may share. Only
+ * the lists of statements of functions are changed in place.
+ */
+class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+    // Counts for stats(), of every script or line given to optimize()
+    private int folded = 0;
+    private int propagated = 0;
+    private int branches = 0;
+    private int unreachable = 0;
+    private int unused = 0;
+    private final List<String> inlined = new ArrayList<>();
+
+    /**
+     * A local variable declared by a Stmt.Var.
+     */
+    private static class Declaration {
+        int reads = 0;
+        int assignments = 0;
+        // Set by the second walk when every read can use "value"
+        boolean constant = false;
+        Object value;
+    }
+
+    private final Map<Var, Declaration> declarations = new HashMap<>();
+    // Declarations of the scopes around the current node, by slot
+    private final List<Declaration[]> scopes = new ArrayList<>();
+    // Globals assigned anywhere, found by the first walk
+    private final java.util.Set<Symbol> assignedGlobals = new HashSet<>();
+    // False during the first walk, which counts the uses of the locals
+    private boolean counted = false;
+    // Created for the second walk
+    private Inliner inliner;
+    // True while optimizing an inlined body, which isn't inlined into again
+    private boolean inlining = false;
+    // Arguments of the call being inlined, already optimized with the call
+    private final java.util.Set<Expr> inlinedArguments =
+        Collections.newSetFromMap(new IdentityHashMap<>());
+
+    void optimize(List<Stmt> statements) {
+        declarations.clear();
+        assignedGlobals.clear();
+        counted = false;
+        optimizeAll(statements);
+        counted = true;
+        inliner = new Inliner(statements, assignedGlobals, inlined);
+        optimizeAll(statements);
+    }
+
+    String stats() {
+        StringBuilder stats = new StringBuilder();
+        stats.append("Optimizer: " + folded + " folded, " + propagated + " propagated, "
+            + branches + " branches, " + unreachable + " unreachable statements, "
+            + unused + " unused locals removed, " + inlined.size() + " calls inlined.");
+        for(String site : inlined) {
+            stats.append("\n").append(site);
+        }
+        return stats.toString();
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Block stmt) {
+        scopes.add(new Declaration[stmt.scopeSize]);
+        List<Stmt> statements = new ArrayList<>(Arrays.asList(stmt.statements));
+        optimizeAll(statements);
+        scopes.remove(scopes.size() - 1);
+
+        if(statements.equals(Arrays.asList(stmt.statements))) return stmt;
+        Block block = new Block(statements.toArray(new Stmt[0]));
+        block.scopeSize = stmt.scopeSize;
+        block.captured = stmt.captured;
+        return block;
+    }
+
+    @Override
+    public Stmt visitBreakStmt(Break stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitClassStmt(Stmt.Class stmt) {
+        if(stmt.superclass != null) {
+            scopes.add(new Declaration[1]);
+        }
+        for(Function method : stmt.methods) {
+            optimize(method);
+        }
+        if(stmt.superclass != null) {
+            scopes.remove(scopes.size() - 1);
+        }
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitContinueStmt(Continue stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Expression stmt) {
+        Expr expression = optimize(stmt.expression);
+        if(expression == stmt.expression) return stmt;
+        return new Expression(expression);
+    }
+
+    @Override
+    public Stmt visitForStmt(For stmt) {
+        scopes.add(new Declaration[stmt.scopeSize]);
+        Stmt initializer = stmt.initializer == null ? null : optimize(stmt.initializer);
+        Expr condition = optimize(stmt.condition);
+        Stmt body = optimizeBranch(stmt.body);
+        Stmt increment = stmt.increment == null ? null : optimize(stmt.increment);
+        scopes.remove(scopes.size() - 1);
+
+        if(initializer == stmt.initializer && condition == stmt.condition
+                && body == stmt.body && increment == stmt.increment) {
+            return stmt;
+        }
+        For loop = new For(initializer, condition, increment, body);
+        loop.scopeSize = stmt.scopeSize;
+        loop.captured = stmt.captured;
+        return loop;
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Function stmt) {
+        scopes.add(new Declaration[stmt.scopeSize]);
+        optimizeAll(stmt.body);
+        scopes.remove(scopes.size() - 1);
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitIfStmt(If stmt) {
+        Expr condition = optimize(stmt.condition);
+        if(condition instanceof Literal) {
+            branches++;
+            Stmt taken = Interpreter.isTruthy(((Literal)condition).value)
+                ? stmt.thenBranch : stmt.elseBranch;
+            return taken == null ? null : optimize(taken);
+        }
+
+        Stmt thenBranch = optimizeBranch(stmt.thenBranch);
+        Stmt elseBranch = stmt.elseBranch == null ? null : optimizeBranch(stmt.elseBranch);
+        if(condition == stmt.condition && thenBranch == stmt.thenBranch
+                && elseBranch == stmt.elseBranch) {
+            return stmt;
+        }
+        return new If(condition, thenBranch, elseBranch);
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Print stmt) {
+        Expr expression = optimize(stmt.expression);
+        if(expression == stmt.expression) return stmt;
+        return new Print(expression);
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Return stmt) {
+        if(stmt.value == null) return stmt;
+        Expr value = optimize(stmt.value);
+        if(value == stmt.value) return stmt;
+        Return returnStmt = new Return(stmt.keyword, value);
+        returnStmt.tail = stmt.tail;
+        return returnStmt;
+    }
+
+    @Override
+    public Stmt visitVarStmt(Var stmt) {
+        Expr initializer = stmt.initializer == null ? null : optimize(stmt.initializer);
+
+        Declaration declaration = null;
+        if(stmt.slot >= 0) {
+            if(counted) {
+                declaration = declarations.get(stmt);
+            } else {
+                declaration = new Declaration();
+                declarations.put(stmt, declaration);
+            }
+            scopes.get(scopes.size() - 1)[stmt.slot] = declaration;
+        }
+
+        if(counted && declaration != null && declaration.assignments == 0) {
+            if(initializer == null || initializer instanceof Literal) {
+                // Every read becomes the value, nothing needs the variable
+                declaration.constant = true;
+                declaration.value = initializer == null ? null : ((Literal)initializer).value;
+                unused++;
+                return null;
+            }
+            if(declaration.reads == 0 && isPure(initializer)) {
+                unused++;
+                return null;
+            }
+        }
+
+        if(initializer == stmt.initializer) return stmt;
+        Var var = new Var(stmt.name, initializer);
+        var.slot = stmt.slot;
+        if(declaration != null) {
+            declarations.put(var, declaration);
+        }
+        return var;
+    }
+
+    @Override
+    public Stmt visitWhileStmt(While stmt) {
+        Expr condition = optimize(stmt.condition);
+        if(condition instanceof Literal && !Interpreter.isTruthy(((Literal)condition).value)) {
+            branches++;
+            return null;
+        }
+
+        Stmt body = optimizeBranch(stmt.body);
+        if(condition == stmt.condition && body == stmt.body) return stmt;
+        return new While(condition, body);
+    }
+
+    @Override
+    public Expr visitAssignExpr(Assign expr) {
+        Expr value = optimize(expr.value);
+        Declaration declaration = declaration(expr.depth, expr.slot);
+        if(declaration != null && !counted) {
+            declaration.assignments++;
+        }
+        if(expr.depth == -1 && !counted) {
+            assignedGlobals.add(expr.name.symbol);
+        }
+
+        if(value == expr.value) return expr;
+        Assign assign = new Assign(expr.name, value);
+        assign.depth = expr.depth;
+        assign.slot = expr.slot;
+        assign.cell = expr.cell;
+        return assign;
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Binary expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+        if(left instanceof Literal && right instanceof Literal) {
+            try {
+                Object value = Interpreter.binary(expr.operator, expr.line,
+                    ((Literal)left).value, ((Literal)right).value);
+                folded++;
+                return new Literal(value);
+            } catch(RuntimeError error) {
+                // Left for the Interpreter to report
+            }
+        }
+
+        if(left == expr.left && right == expr.right) return expr;
+        return new Binary(left, expr.operator, expr.line, right);
+    }
+
+    @Override
+    public Expr visitCallExpr(Call expr) {
+        Expr callee = optimize(expr.callee);
+        Expr[] arguments = optimizeArguments(expr.arguments);
+        Call call = callee == expr.callee && arguments == expr.arguments
+            ? expr : new Call(callee, expr.line, arguments);
+        if(!counted || inlining) return call;
+
+        Inline inline = inliner.inline(call);
+        if(inline == null) return call;
+        // Arguments that are literals can be folded into the body, but the
+        // arguments themselves aren't optimized and counted twice
+        inlining = true;
+        inlinedArguments.addAll(Arrays.asList(call.arguments));
+        Expr body = optimize(inline.body);
+        inlinedArguments.clear();
+        inlining = false;
+        return new Inline(call, inline.function, body);
+    }
+
+    @Override
+    public Expr visitGetExpr(Get expr) {
+        Expr object = optimize(expr.object);
+        if(object == expr.object) return expr;
+        return new Get(object, expr.name);
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Grouping expr) {
+        return optimize(expr.expression);
+    }
+
+    @Override
+    public Expr visitInlineExpr(Inline expr) {
+        Expr body = optimize(expr.body);
+        if(body == expr.body) return expr;
+        return new Inline(expr.call, expr.function, body);
+    }
+
+    @Override
+    public Expr visitInvokeExpr(Invoke expr) {
+        Expr object = optimize(expr.object);
+        Expr[] arguments = optimizeArguments(expr.arguments);
+        if(object == expr.object && arguments == expr.arguments) return expr;
+        return new Invoke(object, expr.name, expr.line, arguments);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Logical expr) {
+        Expr left = optimize(expr.left);
+        if(left instanceof Literal) {
+            // "or" keeps a truthy left operand, "and" a falsey one
+            folded++;
+            boolean truthy = Interpreter.isTruthy(((Literal)left).value);
+            if(truthy == (expr.operator == TokenType.OR)) return left;
+            return optimize(expr.right);
+        }
+
+        Expr right = optimize(expr.right);
+        if(left == expr.left && right == expr.right) return expr;
+        return new Logical(left, expr.operator, expr.line, right);
+    }
+
+    @Override
+    public Expr visitSetExpr(Set expr) {
+        Expr object = optimize(expr.object);
+        Expr value = optimize(expr.value);
+        if(object == expr.object && value == expr.value) return expr;
+        return new Set(object, expr.name, value);
+    }
+
+    @Override
+    public Expr visitSuperExpr(Super expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitThisExpr(This expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Unary expr) {
+        Expr right = optimize(expr.right);
+        if(right instanceof Literal) {
+            Object value = ((Literal)right).value;
+            if(expr.operator == TokenType.BANG) {
+                folded++;
+                return new Literal(!Interpreter.isTruthy(value));
+            }
+            if(value instanceof Double) {
+                folded++;
+                return new Literal(-(double)value);
+            }
+        }
+
+        if(right == expr.right) return expr;
+        return new Unary(expr.operator, expr.line, right);
+    }
+
+    @Override
+    public Expr visitVariableExpr(Variable expr) {
+        Declaration declaration = declaration(expr.depth, expr.slot);
+        if(declaration == null) return expr;
+
+        if(!counted) {
+            declaration.reads++;
+        } else if(declaration.constant) {
+            propagated++;
+            return new Literal(declaration.value);
+        }
+        return expr;
+    }
+
+    private Stmt optimize(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    private Expr optimize(Expr expr) {
+        if(inlinedArguments.contains(expr)) return expr;
+        return expr.accept(this);
+    }
+
+    /**
+     * Optimizes a statement that can't be removed, like the body of a
+     * loop, it becomes an empty block instead.
+     */
+    private Stmt optimizeBranch(Stmt stmt) {
+        Stmt optimized = optimize(stmt);
+        return optimized == null ? new Block(new Stmt[0]) : optimized;
+    }
+
+    private void optimizeAll(List<Stmt> statements) {
+        int i = 0;
+        while(i < statements.size()) {
+            Stmt stmt = optimize(statements.get(i));
+            if(stmt == null) {
+                statements.remove(i);
+                continue;
+            }
+            statements.set(i, stmt);
+            i++;
+
+            if(stmt instanceof Return || stmt instanceof Break || stmt instanceof Continue) {
+                // Nothing after it can run
+                List<Stmt> rest = statements.subList(i, statements.size());
+                unreachable += rest.size();
+                rest.clear();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns "arguments" if none of them changed, or a new array.
+     */
+    private Expr[] optimizeArguments(Expr[] arguments) {
+        Expr[] optimized = arguments;
+        for(int i = 0; i < arguments.length; i++) {
+            Expr argument = optimize(arguments[i]);
+            if(argument != arguments[i] && optimized == arguments) {
+                optimized = arguments.clone();
+            }
+            optimized[i] = argument;
+        }
+        return optimized;
+    }
+
+    /**
+     * Returns the declaration a resolved variable refers to, or null if it
+     * isn't declared by a Stmt.Var in a local scope.
+     */
+    private Declaration declaration(int depth, int slot) {
+        if(depth == -1) return null;
+        return scopes.get(scopes.size() - 1 - depth)[slot];
+    }
+
+    private static boolean isPure(Expr expr) {
+        return expr instanceof Literal
+            || (expr instanceof Variable && ((Variable)expr).depth != -1);
+    }
+}
\ No newline at end of file
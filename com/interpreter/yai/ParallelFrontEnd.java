@@ -0,0 +1,122 @@
+package com.interpreter.yai;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Front end of "--parallel", which gives the same resolved AST as the
+ * Parser and Resolver, with the bodies of the top-level functions and
+ * methods parsed and resolved on the threads of the common fork/join pool.
+ *
+ * The top level is parsed first, skipping the bodies as with "--lazy".
+ * Every body is then parsed on its own, and resolved once the top level
+ * is, as nothing in a body is declared outside of it. The errors found on
+ * each thread are kept, and printed by line once all are found, so they
+ * come out in the same order whatever the threads do.
+ */
+final class ParallelFrontEnd {
+    // Errors of the part of the script being handled on this thread, if any
+    private static final ThreadLocal<List<Diagnostic>> errors = new ThreadLocal<>();
+
+    private static class Diagnostic {
+        final int line;
+        final String message;
+
+        Diagnostic(int line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+    }
+
+    private ParallelFrontEnd() {}
+
+    /**
+     * Keeps an error reported by Yai.error() on a thread of the front end.
+     * Returns false if the thread isn't one, and the error has to be printed.
+     */
+    static boolean collect(int line, String message) {
+        List<Diagnostic> current = errors.get();
+        if(current == null) return false;
+        current.add(new Diagnostic(line, message));
+        return true;
+    }
+
+    /**
+     * Returns the resolved statements of "source", or null after a syntax or
+     * resolution error. References to globals are bound to cells of "globals".
+     */
+    static List<Stmt> resolve(String source, Environment globals) {
+        List<Stmt> statements = new ArrayList<>();
+        List<Diagnostic> topLevel = collecting(() ->
+            statements.addAll(new Parser(new Scanner(source).scanTokens(), source).parse()));
+
+        List<Stmt.Function> functions = new ArrayList<>();
+        for(Stmt statement : statements) {
+            if(statement instanceof Stmt.Function) {
+                functions.add((Stmt.Function)statement);
+            } else if(statement instanceof Stmt.Class) {
+                functions.addAll(((Stmt.Class)statement).methods);
+            }
+        }
+
+        List<List<Diagnostic>> bodies = forEach(functions,
+            function -> function.body.addAll(function.lazyBody.parse()));
+        // Stop if there was syntax error
+        if(report(topLevel, bodies)) return null;
+
+        topLevel = collecting(() -> new Resolver(globals).resolve(statements));
+        bodies = forEach(functions, function -> {
+            LazyBody lazy = function.lazyBody;
+            function.lazyBody = null;
+            new Resolver(globals).resolveLazy(function, lazy.inSubclass);
+        });
+        // Stop if there was a resolution error
+        if(report(topLevel, bodies)) return null;
+        return statements;
+    }
+
+    private static List<List<Diagnostic>> forEach(List<Stmt.Function> functions,
+            Consumer<Stmt.Function> action) {
+        return functions.parallelStream()
+            .map(function -> collecting(() -> action.accept(function)))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Runs "action" and returns the errors it reported.
+     */
+    private static List<Diagnostic> collecting(Runnable action) {
+        List<Diagnostic> found = new ArrayList<>();
+        errors.set(found);
+        try {
+            action.run();
+        } finally {
+            errors.remove();
+        }
+        return found;
+    }
+
+    /**
+     * Prints the errors by line, the top level first on the same line, and
+     * returns whether there were any.
+     */
+    private static boolean report(List<Diagnostic> topLevel, List<List<Diagnostic>> bodies) {
+        List<Diagnostic> all = new ArrayList<>(topLevel);
+        for(List<Diagnostic> body : bodies) {
+            all.addAll(body);
+        }
+        if(all.isEmpty()) return false;
+
+        // The sort is stable, so the errors of a line keep their order
+        Collections.sort(all, Comparator.comparingInt(error -> error.line));
+        for(Diagnostic error : all) {
+            System.err.println(error.message);
+        }
+        Yai.hadError = true;
+        return true;
+    }
+}
\ No newline at end of file
@@ -1,19 +1,51 @@
 package com.interpreter.yai;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 
 class Parser {
     @SuppressWarnings("serial")
     private static class ParseError extends RuntimeException {}
+
+    // Precedence of the binary and logical operators, 0 for other tokens
+    private static final int OR = 1;
+    private static final int AND = 2;
+    private static final int EQUALITY = 3;
+    private static final int COMPARISON = 4;
+    private static final int TERM = 5;
+    private static final int FACTOR = 6;
+    private static final int[] PRECEDENCE = new int[TokenType.values().length];
+    static {
+        PRECEDENCE[TokenType.OR.ordinal()] = OR;
+        PRECEDENCE[TokenType.AND.ordinal()] = AND;
+        PRECEDENCE[TokenType.BANG_EQUAL.ordinal()] = EQUALITY;
+        PRECEDENCE[TokenType.EQUAL_EQUAL.ordinal()] = EQUALITY;
+        PRECEDENCE[TokenType.GREATER.ordinal()] = COMPARISON;
+        PRECEDENCE[TokenType.GREATER_EQUAL.ordinal()] = COMPARISON;
+        PRECEDENCE[TokenType.LESS.ordinal()] = COMPARISON;
+        PRECEDENCE[TokenType.LESS_EQUAL.ordinal()] = COMPARISON;
+        PRECEDENCE[TokenType.PLUS.ordinal()] = TERM;
+        PRECEDENCE[TokenType.MINUS.ordinal()] = TERM;
+        PRECEDENCE[TokenType.STAR.ordinal()] = FACTOR;
+        PRECEDENCE[TokenType.SLASH.ordinal()] = FACTOR;
+    }
     
-    private final List<Token> tokens;
+    private final TokenBuffer tokens;
     private int current = 0;
+    // Source of the tokens when the bodies of top-level functions are only
+    // skipped, to be parsed by LazyBody, or null
+    private final String source;
+    // Blocks around the current token
+    private int blocks = 0;
+
+    Parser(final TokenBuffer tokens) {
+        this(tokens, null);
+    }
 
-    Parser(final List<Token> tokens) {
+    Parser(final TokenBuffer tokens, final String source) {
         this.tokens = tokens;
+        this.source = source;
     }
 
     List<Stmt> parse() {
@@ -90,8 +122,46 @@ class Parser {
         consume(TokenType.RIGHT_PAREN, "Expect ')' after parameters.");
 
         consume(TokenType.LEFT_BRACE, "Expect '{' before " + kind + " body.");
+        if(source != null && blocks == 0) {
+            return lazyFunction(name, parameters);
+        }
         List<Stmt> body = block();
-        return new Stmt.Function(name, parameters, body);
+        return new Stmt.Function(name, parameters.toArray(new Token[0]), body);
+    }
+
+    /**
+     * Skips the body of a top-level function or method, only matching its
+     * braces, and leaves where it is for LazyBody to parse on the first call.
+     */
+    private Stmt.Function lazyFunction(Token name, List<Token> parameters) {
+        int start = tokens.offset(current - 1);
+        int line = previous().line;
+
+        int depth = 1;
+        while(!isAtEnd()) {
+            TokenType type = tokens.type(current);
+            if(type == TokenType.LEFT_BRACE) {
+                depth++;
+            } else if(type == TokenType.RIGHT_BRACE && --depth == 0) {
+                break;
+            }
+            current++;
+        }
+        consume(TokenType.RIGHT_BRACE, "Expect '}' after block.");
+        int end = tokens.offset(current - 1) + 1;
+
+        Stmt.Function function = new Stmt.Function(name, parameters.toArray(new Token[0]),
+            new ArrayList<>());
+        function.lazyBody = new LazyBody(source, start, end, line);
+        return function;
+    }
+
+    /**
+     * Parses a function body with its braces, the whole source LazyBody gives.
+     */
+    List<Stmt> body() {
+        consume(TokenType.LEFT_BRACE, "Expect '{' before function body.");
+        return block();
     }
 
     private Stmt statement() {
@@ -117,7 +187,7 @@ class Parser {
             return continueStatement();
         }
         if(match(TokenType.LEFT_BRACE)) {
-            return new Stmt.Block(block());
+            return new Stmt.Block(block().toArray(new Stmt[0]));
         }
         return expressionStatement();
     }
@@ -125,9 +195,11 @@ class Parser {
     private List<Stmt> block() {
         List<Stmt> statements = new ArrayList<>();
 
+        blocks++;
         while(!isAtEnd() && !check(TokenType.RIGHT_BRACE)) {
             statements.add(declaration());
         }
+        blocks--;
         consume(TokenType.RIGHT_BRACE, "Expect '}' after block.");
         
         return statements;
@@ -175,7 +247,7 @@ class Parser {
         consume(TokenType.RIGHT_PAREN, "Expect ')' after while condition.");
         Stmt body = statement();
 
-        return new Stmt.While(condition, body, null);
+        return new Stmt.While(condition, body);
     }
 
     private Stmt forStatement() {
@@ -205,24 +277,12 @@ class Parser {
 
         Stmt body = statement();
 
-        if(increment != null) {
-            body = new Stmt.Block(Arrays.asList(
-                body,
-                new Stmt.Expression(increment)
-            ));
-        }
         if(condition == null) {
             condition = new Expr.Literal(true);
         }
 
-        body = new Stmt.While(condition, body,
-            increment == null ? null : (new Stmt.Expression(increment)));
-        
-        if(initializer != null) {
-            body = new Stmt.Block(Arrays.asList(initializer, body));
-        }
-        
-        return body;
+        return new Stmt.For(initializer, condition,
+            increment == null ? null : new Stmt.Expression(increment), body);
     }
 
     private Stmt breakStatement() {
@@ -242,7 +302,7 @@ class Parser {
     }
 
     private Expr assignment() {
-        Expr expr = or();
+        Expr expr = binary(OR);
         if(match(TokenType.EQUAL)) {
             Token equals = previous();
             Expr value = assignment();
@@ -260,74 +320,28 @@ class Parser {
         return expr;
     }
 
-    private Expr or() {
-        Expr expr = and();
-
-        while(match(TokenType.OR)) {
-            Token operator = previous();
-            Expr right = and();
-            expr = new Expr.Logical(expr, operator, right);
-        }
-
-        return expr;
-    }
-
-    private Expr and() {
-        Expr expr = equality();
-
-        while(match(TokenType.AND)) {
-            Token operator = previous();
-            Expr right = equality();
-            expr = new Expr.Logical(expr, operator, right);
-        }
-
-        return expr;
-    }
-
-    private Expr equality() {
-        Expr expr = comparison();
-
-        while(match(TokenType.BANG_EQUAL, TokenType.EQUAL_EQUAL)) {
-            final Token operator = previous();
-            final Expr right = comparison();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-
-        return expr;
-    }
-
-    private Expr comparison() {
-        Expr expr = addition();
-        
-        while(match(TokenType.GREATER, TokenType.GREATER_EQUAL,
-                    TokenType.LESS, TokenType.LESS_EQUAL)) {
-            final Token operator = previous();
-            final Expr right = comparison();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-
-        return expr;
-    }
-
-    private Expr addition() {
-        Expr expr = multiplication();
-
-        while(match(TokenType.PLUS, TokenType.MINUS)) {
-            final Token operator = previous();
-            final Expr right = multiplication();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-
-        return expr;
-    }
-
-    private Expr multiplication() {
+    /**
+     * Parses the binary and logical operators of "minPrecedence" or higher,
+     * by their precedence in PRECEDENCE, instead of one method per level.
+     * Operators of the same level group to the left, except comparisons
+     * which group to the right.
+     */
+    private Expr binary(int minPrecedence) {
         Expr expr = unary();
 
-        while(match(TokenType.STAR, TokenType.SLASH)) {
-            final Token operator = previous();
-            final Expr right = unary();
-            expr = new Expr.Binary(expr, operator, right);
+        while(true) {
+            TokenType type = tokens.type(current);
+            int precedence = PRECEDENCE[type.ordinal()];
+            if(precedence < minPrecedence) break;
+
+            // The node only keeps the type and line of the operator
+            final int line = tokens.line(current++);
+            final Expr right = binary(precedence == COMPARISON ? precedence : precedence + 1);
+            if(type == TokenType.OR || type == TokenType.AND) {
+                expr = new Expr.Logical(expr, type, line, right);
+            } else {
+                expr = new Expr.Binary(expr, type, line, right);
+            }
         }
 
         return expr;
@@ -335,9 +349,10 @@ class Parser {
 
     private Expr unary() {
         if(match(TokenType.BANG, TokenType.MINUS)) {
-            final Token operator = previous();
+            final TokenType operator = tokens.type(current - 1);
+            final int line = tokens.line(current - 1);
             final Expr right = unary();
-            return new Expr.Unary(operator, right);
+            return new Expr.Unary(operator, line, right);
         }
 
         return call();
@@ -370,8 +385,12 @@ class Parser {
                 arguments.add(expression());
             } while(match(TokenType.COMMA));
         }
-        Token paren = consume(TokenType.RIGHT_PAREN, "Expect ')' after arguments.");
-        return new Expr.Call(callee, paren, arguments);
+        int line = consume(TokenType.RIGHT_PAREN, "Expect ')' after arguments.").line;
+        if(callee instanceof Expr.Get) {
+            Expr.Get get = (Expr.Get)callee;
+            return new Expr.Invoke(get.object, get.name, line, arguments.toArray(new Expr[0]));
+        }
+        return new Expr.Call(callee, line, arguments.toArray(new Expr[0]));
     }
 
     private Expr primary() {
@@ -421,9 +440,9 @@ class Parser {
         advance();
 
         while(!isAtEnd()) {
-            if(previous().type == TokenType.SEMICOLON) return;
+            if(tokens.type(current - 1) == TokenType.SEMICOLON) return;
 
-            switch(peek().type) {
+            switch(tokens.type(current)) {
                 case CLASS:
                 case FUN:
                 case VAR:
@@ -454,7 +473,7 @@ class Parser {
 
     private boolean check(final TokenType type) {
         if(isAtEnd()) return false;
-        return peek().type == type;
+        return tokens.type(current) == type;
     }
 
     private Token advance() {
@@ -471,6 +490,6 @@ class Parser {
     }
 
     private boolean isAtEnd() {
-        return peek().type == TokenType.EOF;
+        return tokens.type(current) == TokenType.EOF;
     }
 }
\ No newline at end of file
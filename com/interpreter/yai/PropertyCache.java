@@ -0,0 +1,115 @@
+package com.interpreter.yai;
+
+/**
+ * Inline cache of a property access site (Expr.Get or Expr.Set).
+ *
+ * Remembers, for up to SIZE receiver shapes, what the property name
+ * resolves to: the slot of a field, or a method of the shape's class. A
+ * site seeing more shapes than that stops caching and always takes the
+ * slow path.
+ *
+ * Methods can't change once a class is created and adding a field,
+ * including one shadowing a method, gives the instance a new shape, so a
+ * cached entry never needs to be invalidated.
+ */
+class PropertyCache {
+    private static final int SIZE = 4;
+
+    static long hits = 0;
+    static long misses = 0;
+
+    private final Shape[] shapes = new Shape[SIZE];
+    // Slot of the field, or -1 when it isn't a field of the shape
+    private final int[] slots = new int[SIZE];
+    // Get: method of the class when the name isn't a field.
+    // Set: shape after adding the field when it isn't a field yet.
+    private final Object[] targets = new Object[SIZE];
+    private int count = 0;
+
+    Object get(YaiInstance instance, Token name) {
+        Shape shape = instance.shape;
+        for(int i = 0; i < count; i++) {
+            if(shapes[i] != shape) continue;
+
+            hits++;
+            int slot = slots[i];
+            if(slot != -1) {
+                return instance.values[slot];
+            }
+            return ((YaiFunction)targets[i]).bind(instance);
+        }
+
+        misses++;
+        Object value = instance.get(name);
+
+        // Only cache what's found, undefined properties are an error anyway
+        int slot = shape.slotOf(name.symbol);
+        add(shape, slot, slot == -1 ? shape.klass.findMethod(name.symbol) : null);
+        return value;
+    }
+
+    /**
+     * Same as get(), except that a method is returned without binding it,
+     * see YaiFunction.isUnbound().
+     */
+    Object find(YaiInstance instance, Token name) {
+        Shape shape = instance.shape;
+        for(int i = 0; i < count; i++) {
+            if(shapes[i] != shape) continue;
+
+            hits++;
+            int slot = slots[i];
+            if(slot != -1) {
+                return instance.values[slot];
+            }
+            return targets[i];
+        }
+
+        misses++;
+        int slot = shape.slotOf(name.symbol);
+        if(slot != -1) {
+            add(shape, slot, null);
+            return instance.values[slot];
+        }
+        YaiFunction method = shape.klass.findMethod(name.symbol);
+        if(method == null) {
+            // Reports the undefined property
+            return instance.get(name);
+        }
+        add(shape, slot, method);
+        return method;
+    }
+
+    void set(YaiInstance instance, Token name, Object value) {
+        Shape shape = instance.shape;
+        for(int i = 0; i < count; i++) {
+            if(shapes[i] != shape) continue;
+
+            hits++;
+            int slot = slots[i];
+            if(slot == -1) {
+                slot = shape.size;
+                instance.grow((Shape)targets[i]);
+            }
+            instance.values[slot] = value;
+            return;
+        }
+
+        misses++;
+        int slot = shape.slotOf(name.symbol);
+        add(shape, slot, slot == -1 ? shape.with(name.symbol) : null);
+        instance.set(name, value);
+    }
+
+    static String stats() {
+        return "Inline caches: " + hits + " hits, " + misses + " misses.";
+    }
+
+    private void add(Shape shape, int slot, Object target) {
+        if(count == SIZE) return;
+        shapes[count] = shape;
+        slots[count] = slot;
+        targets[count] = target;
+        count++;
+    }
+}
\ No newline at end of file
@@ -10,6 +10,8 @@ import com.interpreter.yai.Expr.Binary;
 import com.interpreter.yai.Expr.Call;
 import com.interpreter.yai.Expr.Get;
 import com.interpreter.yai.Expr.Grouping;
+import com.interpreter.yai.Expr.Inline;
+import com.interpreter.yai.Expr.Invoke;
 import com.interpreter.yai.Expr.Literal;
 import com.interpreter.yai.Expr.Logical;
 import com.interpreter.yai.Expr.Set;
@@ -21,6 +23,7 @@ import com.interpreter.yai.Stmt.Block;
 import com.interpreter.yai.Stmt.Break;
 import com.interpreter.yai.Stmt.Continue;
 import com.interpreter.yai.Stmt.Expression;
+import com.interpreter.yai.Stmt.For;
 import com.interpreter.yai.Stmt.Function;
 import com.interpreter.yai.Stmt.If;
 import com.interpreter.yai.Stmt.Print;
@@ -29,11 +32,24 @@ import com.interpreter.yai.Stmt.Var;
 import com.interpreter.yai.Stmt.While;
 
 class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
-    private final Interpreter interpreter;
-    private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+    private final Stack<Map<Symbol, Local>> scopes = new Stack<>();
+    // Functions and classes declared so far, and how many there were when
+    // each open scope began, to tell which scopes closures can see
+    private int closures = 0;
+    private final Stack<Integer> closuresAtBegin = new Stack<>();
     private FunctionType currentFunction = FunctionType.NONE;
     private ClassType currentClass = ClassType.NONE;
     private LoopType currentLoop = LoopType.NONE;
+    // Loops around the current node in the current function
+    private int loopsInFunction = 0;
+    // Set by resolveLazy(), the parameters were checked with the header
+    private boolean parametersChecked = false;
+    // Gives the cells references to globals are bound to
+    private final Environment globals;
+
+    Resolver(Environment globals) {
+        this.globals = globals;
+    }
 
     private enum FunctionType {
         NONE,
@@ -53,15 +69,28 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         WHILE
     }
 
-    Resolver(Interpreter interpreter) {
-        this.interpreter = interpreter;
+    /**
+     * A local variable declared in one of the scopes, "slot" is its index
+     * in the runtime Environment of that scope.
+     */
+    private static class Local {
+        final int slot;
+        boolean defined;
+
+        Local(int slot, boolean defined) {
+            this.slot = slot;
+            this.defined = defined;
+        }
     }
 
     @Override
     public Void visitBlockStmt(Block stmt) {
         beginScope();
-        resolve(stmt.statements);
-        endScope();
+        for(Stmt statement : stmt.statements) {
+            resolve(statement);
+        }
+        stmt.captured = captured();
+        stmt.scopeSize = endScope();
         return null;
     }
 
@@ -69,31 +98,28 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	public Void visitClassStmt(Stmt.Class stmt) {
         ClassType enclosingClassType = currentClass;
         currentClass = ClassType.CLASS;
-        declare(stmt.name);
+        closures++;
+        stmt.slot = declare(stmt.name);
         define(stmt.name);
 
         if(stmt.superclass != null) {
-            if(stmt.name.lexeme.equals(stmt.superclass.name.lexeme)) {
+            if(stmt.name.symbol == stmt.superclass.name.symbol) {
                 Yai.error(stmt.superclass.name, "A class cannot inherit from itself.");
             }
             currentClass = ClassType.SUBCLASS;
             resolve(stmt.superclass);
             beginScope();
-            scopes.peek().put("super", true);
+            scopes.peek().put(Symbol.SUPER, new Local(0, true));
         }
 
-        beginScope();
-        scopes.peek().put("this", true);
-        
         for(Stmt.Function method : stmt.methods) {
             FunctionType declaration = FunctionType.METHOD;
-            if(method.name.lexeme.equals("init")) {
+            if(method.name.symbol == Symbol.INIT) {
                 declaration = FunctionType.INITIALIZER;
             }
             resolveFunction(method, declaration);
         }
         
-        endScope();
         if(stmt.superclass != null) {
             endScope();
         }
@@ -103,7 +129,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitVarStmt(Var stmt) {
-        declare(stmt.name);
+        stmt.slot = declare(stmt.name);
         if (stmt.initializer != null) {
             resolve(stmt.initializer);
         }
@@ -123,10 +149,34 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         return null;
     }
 
+    @Override
+    public Void visitForStmt(For stmt) {
+        beginScope();
+        if(stmt.initializer != null) {
+            resolve(stmt.initializer);
+        }
+        resolve(stmt.condition);
+
+        LoopType enclosingLoopType = currentLoop;
+        currentLoop = LoopType.WHILE;
+        loopsInFunction++;
+        resolve(stmt.body);
+        loopsInFunction--;
+        currentLoop = enclosingLoopType;
+
+        if(stmt.increment != null) {
+            resolve(stmt.increment);
+        }
+        stmt.captured = captured();
+        stmt.scopeSize = endScope();
+        return null;
+    }
+
     @Override
     public Void visitFunctionStmt(Function stmt) {
-        declare(stmt.name);
+        stmt.slot = declare(stmt.name);
         define(stmt.name);
+        closures++;
         resolveFunction(stmt, FunctionType.FUNCTION);
         return null;
     }
@@ -142,6 +192,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             }
             resolve(stmt.value);
         }
+        stmt.tail = loopsInFunction == 0;
         return null;
     }
 
@@ -159,7 +210,9 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         currentLoop = LoopType.WHILE;
 
         resolve(stmt.condition);
+        loopsInFunction++;
         resolve(stmt.body);
+        loopsInFunction--;
 
         currentLoop = enclosingLoopType;
         return null;
@@ -184,7 +237,12 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitAssignExpr(Assign expr) {
         resolve(expr.value);
-        resolveLocal(expr, expr.name);
+        expr.depth = resolveLocal(expr.name);
+        if(expr.depth != -1) {
+            expr.slot = slotOf(expr.depth, expr.name);
+        } else {
+            expr.cell = globals.cell(expr.name.symbol);
+        }
         return null;
     }
 
@@ -210,6 +268,22 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         return null;
     }
 
+    @Override
+    public Void visitInlineExpr(Inline expr) {
+        // Only created by the Optimizer, after resolution
+        resolve(expr.call);
+        return null;
+    }
+
+    @Override
+    public Void visitInvokeExpr(Invoke expr) {
+        resolve(expr.object);
+        for(Expr argument : expr.arguments) {
+            resolve(argument);
+        }
+        return null;
+    }
+
     @Override
     public Void visitGroupingExpr(Grouping expr) {
         resolve(expr.expression);
@@ -242,7 +316,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         } else if(currentClass != ClassType.SUBCLASS) {
             Yai.error(expr.keyword, "Cannot use 'super' in a class with no superclass.");
         }
-        resolveLocal(expr, expr.keyword);
+        expr.depth = resolveLocal(expr.keyword);
         return null;
     }
 
@@ -252,7 +326,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             Yai.error(expr.keyword, "Cannot use 'this' outside of class.");
             return null;
         }
-        resolveLocal(expr, expr.keyword);
+        expr.depth = resolveLocal(expr.keyword);
         return null;
     }
 
@@ -264,10 +338,18 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitVariableExpr(Variable expr) {
-        if(!scopes.isEmpty() && scopes.peek().get(expr.name.lexeme) == Boolean.FALSE) {
-            Yai.error(expr.name, "Cannot read local variable in its own initializer.");
+        if(!scopes.isEmpty()) {
+            Local local = scopes.peek().get(expr.name.symbol);
+            if(local != null && !local.defined) {
+                Yai.error(expr.name, "Cannot read local variable in its own initializer.");
+            }
+        }
+        expr.depth = resolveLocal(expr.name);
+        if(expr.depth != -1) {
+            expr.slot = slotOf(expr.depth, expr.name);
+        } else {
+            expr.cell = globals.cell(expr.name.symbol);
         }
-        resolveLocal(expr, expr.name);
         return null;
     }
 
@@ -285,51 +367,125 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         expression.accept(this);
     }
 
-    private void resolveLocal(Expr expr, Token name) {
+    /**
+     * Returns the number of scopes between the current one and the one
+     * declaring the variable, which the interpreter stores on the node.
+     */
+    private int resolveLocal(Token name) {
         for(int i = scopes.size() - 1; i >= 0; i--) {
-            if(scopes.get(i).containsKey(name.lexeme)) {
-                interpreter.resolve(expr, scopes.size() - 1 - i);
-                return;
+            if(scopes.get(i).containsKey(name.symbol)) {
+                return scopes.size() - 1 - i;
             }
         }
         // If reached here then
         // Not found. Assume it is global.
+        return -1;
+    }
+
+    private int slotOf(int depth, Token name) {
+        return scopes.get(scopes.size() - 1 - depth).get(name.symbol).slot;
+    }
+
+    /**
+     * Resolves the body of a top-level function or method filled by
+     * LazyBody, in the scopes it would have had at load time.
+     */
+    void resolveLazy(Function function, boolean inSubclass) {
+        parametersChecked = true;
+        if(!function.isMethod) {
+            resolveFunction(function, FunctionType.FUNCTION);
+            return;
+        }
+
+        currentClass = inSubclass ? ClassType.SUBCLASS : ClassType.CLASS;
+        if(inSubclass) {
+            beginScope();
+            scopes.peek().put(Symbol.SUPER, new Local(0, true));
+        }
+        resolveFunction(function,
+            function.name.symbol == Symbol.INIT ? FunctionType.INITIALIZER : FunctionType.METHOD);
+        if(inSubclass) {
+            endScope();
+        }
     }
 
     private void resolveFunction(Function function, FunctionType type) {
+        if(function.lazyBody != null) {
+            // The body is resolved by resolveLazy() once it is parsed, the
+            // parameters are checked now like the rest of the header
+            function.isMethod = type == FunctionType.METHOD || type == FunctionType.INITIALIZER;
+            function.lazyBody.inSubclass = currentClass == ClassType.SUBCLASS;
+            beginScope();
+            for(Token param : function.params) {
+                declare(param);
+            }
+            endScope();
+            return;
+        }
         FunctionType enclosingFunction = currentFunction;
         currentFunction = type;
+        int enclosingLoops = loopsInFunction;
+        loopsInFunction = 0;
         beginScope();
+        // A method's receiver comes before its parameters
+        if(type == FunctionType.METHOD || type == FunctionType.INITIALIZER) {
+            scopes.peek().put(Symbol.THIS, new Local(0, true));
+            function.isMethod = true;
+        }
         for(Token param : function.params) {
+            // Reported once, when the header was resolved
+            if(parametersChecked && scopes.peek().containsKey(param.symbol)) continue;
             declare(param);
             define(param);
         }
+        parametersChecked = false;
         resolve(function.body);
-        endScope();
+        function.captured = captured();
+        function.scopeSize = endScope();
+        loopsInFunction = enclosingLoops;
         currentFunction = enclosingFunction;
     }
 
     private void beginScope() {
-        scopes.push(new HashMap<String, Boolean>());
+        scopes.push(new HashMap<Symbol, Local>());
+        closuresAtBegin.push(closures);
     }
 
-    private void endScope() {
-        scopes.pop();
+    /**
+     * Whether a function or class was declared inside the current scope,
+     * which makes its environment reachable from a closure.
+     */
+    private boolean captured() {
+        return closures != closuresAtBegin.peek();
     }
 
-    private void declare(Token name) {
+    /**
+     * Returns the number of slots the scope needs at runtime.
+     */
+    private int endScope() {
+        closuresAtBegin.pop();
+        return scopes.pop().size();
+    }
+
+    /**
+     * Returns the slot of the declared variable, or -1 for a global.
+     */
+    private int declare(Token name) {
         if (scopes.isEmpty())
-            return;
-        Map<String, Boolean> scope = scopes.peek();
-        if(scope.containsKey(name.lexeme)) {
+            return -1;
+        Map<Symbol, Local> scope = scopes.peek();
+        if(scope.containsKey(name.symbol)) {
             Yai.error(name, "Variable with this name already declared in this scope.");
+            return scope.get(name.symbol).slot;
         }
-        scope.put(name.lexeme, false);
+        int slot = scope.size();
+        scope.put(name.symbol, new Local(slot, false));
+        return slot;
     }
 
     private void define(Token name) {
         if (scopes.isEmpty())
             return;
-        scopes.peek().put(name.lexeme, true);
+        scopes.peek().get(name.symbol).defined = true;
     }
 }
\ No newline at end of file
@@ -0,0 +1,86 @@
+package com.interpreter.yai;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * String made by "+", which keeps its two operands instead of copying them.
+ *
+ * A loop like "s = s + piece;" would copy "s" every time with Java strings.
+ * With ropes it only builds a chain of nodes, copied once into a String
+ * when the value is printed, compared or passed to "str". The flat String
+ * is kept, and the operands dropped, so it is only built once.
+ *
+ * Yai strings are either a String or a Rope, so the engines check for a
+ * CharSequence where they check for a string.
+ */
+final class Rope implements CharSequence {
+    // Shorter results are copied right away, as for Java strings
+    private static final int MIN_LENGTH = 64;
+
+    private final int length;
+    // Operands, until the rope is flattened
+    private CharSequence left;
+    private CharSequence right;
+    private String flat;
+
+    private Rope(CharSequence left, CharSequence right) {
+        this.length = left.length() + right.length();
+        this.left = left;
+        this.right = right;
+    }
+
+    /**
+     * Value of "left + right" for two Yai strings.
+     */
+    static CharSequence concat(CharSequence left, CharSequence right) {
+        if(left.length() == 0) return right;
+        if(right.length() == 0) return left;
+        if(left.length() + right.length() < MIN_LENGTH) {
+            return left.toString() + right.toString();
+        }
+        return new Rope(left, right);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    /**
+     * Copies the leaves in order, without recursion since "s = s + piece;"
+     * makes ropes as deep as the number of pieces.
+     */
+    @Override
+    public String toString() {
+        if(flat != null) return flat;
+
+        StringBuilder builder = new StringBuilder(length);
+        Deque<CharSequence> pending = new ArrayDeque<>();
+        pending.push(this);
+        while(!pending.isEmpty()) {
+            CharSequence next = pending.pop();
+            if(next instanceof Rope && ((Rope)next).flat == null) {
+                Rope rope = (Rope)next;
+                pending.push(rope.right);
+                pending.push(rope.left);
+            } else {
+                builder.append(next.toString());
+            }
+        }
+        flat = builder.toString();
+        left = null;
+        right = null;
+        return flat;
+    }
+}
\ No newline at end of file
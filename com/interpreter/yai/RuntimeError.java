@@ -3,9 +3,20 @@ package com.interpreter.yai;
 @SuppressWarnings("serial")
 class RuntimeError extends RuntimeException {
     final Token token;
+    final int line;
 
     RuntimeError(Token token, String message) {
         super(message);
         this.token = token;
+        this.line = token.line;
+    }
+
+    /**
+     * Used by the VM, which only keeps line numbers around at runtime.
+     */
+    RuntimeError(int line, String message) {
+        super(message);
+        this.token = null;
+        this.line = line;
     }
 }
\ No newline at end of file
@@ -1,54 +1,74 @@
 package com.interpreter.yai;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
 
+/**
+ * Splits the source into tokens, one at a time as the Parser asks its
+ * TokenBuffer for them.
+ *
+ * The source is read in chunks into "chars", and the characters before
+ * the token being scanned are dropped on the next read, so only the
+ * current token has to fit in memory, however long the source.
+ */
 class Scanner {
-    private final String source;
-    private final List<Token> tokens = new ArrayList<>();
+    private static final int CHUNK = 8192;
+
+    private final Reader reader;
+    private final TokenBuffer tokens = new TokenBuffer(this);
+    private char[] chars = new char[CHUNK];
+    // Characters read so far in "chars"
+    private int limit = 0;
+    // Characters dropped before "chars", to give tokens their offset
+    private int dropped = 0;
+    private boolean endOfInput = false;
     private int start = 0;
     private int current = 0;
-    private int line = 1;
-
-    private static final Map<String, TokenType> keywords;
-
-    static {
-        keywords = new HashMap<>();
-        keywords.put("and", TokenType.AND);
-        keywords.put("break", TokenType.BREAK);
-        keywords.put("class", TokenType.CLASS);
-        keywords.put("continue", TokenType.CONTINUE);
-        keywords.put("else", TokenType.ELSE);
-        keywords.put("false", TokenType.FALSE);
-        keywords.put("for", TokenType.FOR);
-        keywords.put("fun", TokenType.FUN);
-        keywords.put("if", TokenType.IF);
-        keywords.put("nil", TokenType.NIL);
-        keywords.put("or", TokenType.OR);
-        keywords.put("print", TokenType.PRINT);
-        keywords.put("return", TokenType.RETURN);
-        keywords.put("super", TokenType.SUPER);
-        keywords.put("this", TokenType.THIS);
-        keywords.put("true", TokenType.TRUE);
-        keywords.put("var", TokenType.VAR);
-        keywords.put("while", TokenType.WHILE);
-    }
+    private int line;
 
     Scanner(String source) {
-        this.source = source;
+        this(new StringReader(source));
+    }
+
+    Scanner(Reader reader) {
+        this(reader, 1);
+    }
+
+    /**
+     * Scans "source" as if it started at "line", for the part of a script
+     * that LazyBody parses.
+     */
+    Scanner(String source, int line) {
+        this(new StringReader(source), line);
+    }
+
+    private Scanner(Reader reader, int line) {
+        this.reader = reader;
+        this.line = line;
+    }
+
+    TokenBuffer scanTokens() {
+        return tokens;
     }
 
-    List<Token> scanTokens() {
-        while(!isAtEnd()) {
+    /**
+     * Scans until the next token is added to the buffer, or an EOF token
+     * at the end of the source.
+     */
+    void scanNext() {
+        int count = tokens.size();
+        while(tokens.size() == count) {
+            if(isAtEnd()) {
+                tokens.add(TokenType.EOF, null, line, dropped + current);
+                return;
+            }
             // I am at beginning of the next lexeme
             start = current;
             scanToken();
         }
-
-        tokens.add(new Token(TokenType.EOF, "", null, line));
-        return tokens;
     }
 
     private void scanToken() {
@@ -71,10 +91,15 @@ class Scanner {
             case '/':
                 if(match('/')) {
                     // A comment goes until end of line
-                    while(!isAtEnd() && peek() != '\n') advance();
+                    while(!isAtEnd() && peek() != '\n') {
+                        // Comments aren't kept, let read() drop them
+                        start = current;
+                        advance();
+                    }
                 } else if(match('*')) {
                     boolean closed = false;
                     while(!isAtEnd()) {
+                        start = current;
                         if(match('*') && peek() == '/') {
                             advance();
                             closed = true;
@@ -124,27 +149,59 @@ class Scanner {
     }
 
     private boolean isAtEnd() {
-        return current >= source.length();
+        return current >= limit && !read();
+    }
+
+    /**
+     * Reads the next chunk of the source, after dropping the characters
+     * before the current token. Returns false at the end of the source.
+     */
+    private boolean read() {
+        if(endOfInput) return false;
+        if(start > 0) {
+            System.arraycopy(chars, start, chars, 0, limit - start);
+            limit -= start;
+            dropped += start;
+            current -= start;
+            start = 0;
+        }
+        if(limit == chars.length) {
+            // The current token is longer than a chunk
+            chars = Arrays.copyOf(chars, chars.length * 2);
+        }
+        try {
+            int read = reader.read(chars, limit, chars.length - limit);
+            if(read == -1) {
+                endOfInput = true;
+                return false;
+            }
+            limit += read;
+            return true;
+        } catch(IOException error) {
+            throw new UncheckedIOException(error);
+        }
     }
 
     private char advance() {
-        ++current;
-        return source.charAt(current-1);
+        if(current >= limit) read();
+        return chars[current++];
     }
 
     private char peek() {
         if(isAtEnd()) return '\0';
-        return source.charAt(current);
+        return chars[current];
     }
 
     private char peekNext() {
-        if(current + 1 >= source.length()) return '\0';
-        return source.charAt(current+1);
+        while(current + 1 >= limit) {
+            if(!read()) return '\0';
+        }
+        return chars[current + 1];
     }
 
     private boolean match(char expected) {
         if(isAtEnd()) return false;
-        if(source.charAt(current) != expected) return false;
+        if(chars[current] != expected) return false;
 
         ++current;
         return true;
@@ -168,9 +225,7 @@ class Scanner {
 
         // String close '"'
         advance();
-        // Trim the surrounding quotes
-        String value = source.substring(start + 1, current - 1);
-        addToken(TokenType.STRING, value);
+        addToken(TokenType.STRING, new String(chars, start, current - start));
     }
 
     /**
@@ -188,30 +243,86 @@ class Scanner {
             while(isDigit(peek())) advance();
         }
 
-        addToken(
-            TokenType.NUMBER,
-            Double.parseDouble(source.substring(start, current))
-        );
+        addToken(TokenType.NUMBER, new String(chars, start, current - start));
     }
 
     private void identifier() {
         while(isAlphaNumeric(peek())) advance();
 
-        // check for a reserved word
-        String text = source.substring(start, current);
-        
-        TokenType type = keywords.getOrDefault(text, null);
-        if(type == null) type = TokenType.IDENTIFIER;
+        TokenType type = keyword();
+        if(type == TokenType.IDENTIFIER || type == TokenType.THIS || type == TokenType.SUPER) {
+            addToken(type, Symbol.of(chars, start, current));
+        } else {
+            addToken(type);
+        }
+    }
+
+    /**
+     * Type of the reserved word the identifier just read is, by its first
+     * letters, or IDENTIFIER.
+     */
+    private TokenType keyword() {
+        switch(chars[start]) {
+            case 'a': return rest(1, "nd", TokenType.AND);
+            case 'b': return rest(1, "reak", TokenType.BREAK);
+            case 'c':
+                if(current - start > 1) {
+                    switch(chars[start + 1]) {
+                        case 'l': return rest(2, "ass", TokenType.CLASS);
+                        case 'o': return rest(2, "ntinue", TokenType.CONTINUE);
+                    }
+                }
+                break;
+            case 'e': return rest(1, "lse", TokenType.ELSE);
+            case 'f':
+                if(current - start > 1) {
+                    switch(chars[start + 1]) {
+                        case 'a': return rest(2, "lse", TokenType.FALSE);
+                        case 'o': return rest(2, "r", TokenType.FOR);
+                        case 'u': return rest(2, "n", TokenType.FUN);
+                    }
+                }
+                break;
+            case 'i': return rest(1, "f", TokenType.IF);
+            case 'n': return rest(1, "il", TokenType.NIL);
+            case 'o': return rest(1, "r", TokenType.OR);
+            case 'p': return rest(1, "rint", TokenType.PRINT);
+            case 'r': return rest(1, "eturn", TokenType.RETURN);
+            case 's': return rest(1, "uper", TokenType.SUPER);
+            case 't':
+                if(current - start > 1) {
+                    switch(chars[start + 1]) {
+                        case 'h': return rest(2, "is", TokenType.THIS);
+                        case 'r': return rest(2, "ue", TokenType.TRUE);
+                    }
+                }
+                break;
+            case 'v': return rest(1, "ar", TokenType.VAR);
+            case 'w': return rest(1, "hile", TokenType.WHILE);
+        }
+        return TokenType.IDENTIFIER;
+    }
 
-        addToken(type);
+    /**
+     * "type" if the identifier is "rest" after its first "offset" letters.
+     */
+    private TokenType rest(int offset, String rest, TokenType type) {
+        if(current - start != offset + rest.length()) return TokenType.IDENTIFIER;
+        for(int i = 0; i < rest.length(); i++) {
+            if(chars[start + offset + i] != rest.charAt(i)) return TokenType.IDENTIFIER;
+        }
+        return type;
     }
 
     private void addToken(TokenType type) {
         addToken(type, null);
     }
 
-    private void addToken(TokenType type, Object literal) {
-        String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+    /**
+     * "text" is the Symbol of a name, or the lexeme of a literal, as the
+     * characters are gone once the Parser needs them.
+     */
+    private void addToken(TokenType type, Object text) {
+        tokens.add(type, text, line, dropped + start);
     }
 }
\ No newline at end of file
@@ -0,0 +1,52 @@
+package com.interpreter.yai;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Layout of the fields of a YaiInstance, shared by every instance that got
+ * the same fields in the same order.
+ *
+ * Each class has an empty root shape. Adding a field moves an instance to
+ * the next shape in the tree, which is created once and then reused, so
+ * instances built by the same "init" end up sharing a shape.
+ */
+class Shape {
+    final YaiClass klass;
+    // Number of fields, each field's slot is below it
+    final int size;
+    private final Map<Symbol, Integer> slots;
+    private final Map<Symbol, Shape> transitions = new HashMap<>();
+
+    Shape(YaiClass klass) {
+        this(klass, new HashMap<>());
+    }
+
+    private Shape(YaiClass klass, Map<Symbol, Integer> slots) {
+        this.klass = klass;
+        this.size = slots.size();
+        this.slots = slots;
+    }
+
+    /**
+     * Slot of the field "name", or -1 if shapes don't have it.
+     */
+    int slotOf(Symbol name) {
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Shape with "name" added as the next slot.
+     */
+    Shape with(Symbol name) {
+        Shape next = transitions.get(name);
+        if(next == null) {
+            Map<Symbol, Integer> nextSlots = new HashMap<>(slots);
+            nextSlots.put(name, size);
+            next = new Shape(klass, nextSlots);
+            transitions.put(name, next);
+        }
+        return next;
+    }
+}
\ No newline at end of file
@@ -4,12 +4,33 @@ import java.util.List;
 
 abstract class Stmt {
 
+    // Kind tags of the sub-types, in the order they are declared
+    static final int BLOCK = 0;
+    static final int BREAK = 1;
+    static final int CLASS = 2;
+    static final int CONTINUE = 3;
+    static final int EXPRESSION = 4;
+    static final int FOR = 5;
+    static final int FUNCTION = 6;
+    static final int IF = 7;
+    static final int PRINT = 8;
+    static final int RETURN = 9;
+    static final int VAR = 10;
+    static final int WHILE = 11;
+
+    final int kind;
+
+    Stmt(int kind) {
+        this.kind = kind;
+    }
+
     interface Visitor<T> {
         T visitBlockStmt(Block stmt);
         T visitBreakStmt(Break stmt);
         T visitClassStmt(Class stmt);
         T visitContinueStmt(Continue stmt);
         T visitExpressionStmt(Expression stmt);
+        T visitForStmt(For stmt);
         T visitFunctionStmt(Function stmt);
         T visitIfStmt(If stmt);
         T visitPrintStmt(Print stmt);
@@ -19,9 +40,12 @@ abstract class Stmt {
     }
 
     static class Block extends Stmt {
-        final List<Stmt> statements;
+        final Stmt[] statements;
+        int scopeSize;
+        boolean captured;
 
-        Block(List<Stmt> statements) {
+        Block(Stmt[] statements) {
+            super(BLOCK);
             this.statements = statements;
         }
 
@@ -35,6 +59,7 @@ abstract class Stmt {
         final Token keyword;
 
         Break(Token keyword) {
+            super(BREAK);
             this.keyword = keyword;
         }
 
@@ -48,8 +73,10 @@ abstract class Stmt {
         final Token name;
         final Expr.Variable superclass;
         final List<Stmt.Function> methods;
+        int slot = -1;
 
         Class(Token name, Expr.Variable superclass, List<Stmt.Function> methods) {
+            super(CLASS);
             this.name = name;
             this.superclass = superclass;
             this.methods = methods;
@@ -65,6 +92,7 @@ abstract class Stmt {
         final Token keyword;
 
         Continue(Token keyword) {
+            super(CONTINUE);
             this.keyword = keyword;
         }
 
@@ -78,6 +106,7 @@ abstract class Stmt {
         final Expr expression;
 
         Expression(Expr expression) {
+            super(EXPRESSION);
             this.expression = expression;
         }
 
@@ -87,12 +116,54 @@ abstract class Stmt {
         }
     }
 
+    /**
+     * The initializer is declared in a scope of its own, created once for
+     * the whole loop, which the condition, increment and body run in.
+     * The increment is an expression statement, or "null" if there is
+     * none. It runs after the body, even when the body hits "continue".
+     */
+    static class For extends Stmt {
+        final Stmt initializer;
+        final Expr condition;
+        final Stmt increment;
+        final Stmt body;
+        int scopeSize;
+        boolean captured;
+
+        For(Stmt initializer, Expr condition, Stmt increment, Stmt body) {
+            super(FOR);
+            this.initializer = initializer;
+            this.condition = condition;
+            this.increment = increment;
+            this.body = body;
+        }
+
+        @Override
+        <T> T accept(Visitor<T> visitor) {
+            return visitor.visitForStmt(this);
+        }
+    }
+
+    /**
+     * With "--lazy", the body of a top-level function or method is left
+     * empty by the Parser, and "lazyBody" parses it on the first call.
+     * That is why the body is a List, when the other nodes keep arrays of
+     * the exact size.
+     */
     static class Function extends Stmt {
         final Token name;
-        final List<Token> params;
+        final Token[] params;
         final List<Stmt> body;
-
-        Function(Token name, List<Token> params, List<Stmt> body) {
+        int slot = -1;
+        int scopeSize;
+        boolean captured;
+        boolean isMethod;
+        int calls;
+        JitCode code;
+        LazyBody lazyBody;
+
+        Function(Token name, Token[] params, List<Stmt> body) {
+            super(FUNCTION);
             this.name = name;
             this.params = params;
             this.body = body;
@@ -110,6 +181,7 @@ abstract class Stmt {
         final Stmt elseBranch;
 
         If(Expr condition, Stmt thenBranch, Stmt elseBranch) {
+            super(IF);
             this.condition = condition;
             this.thenBranch = thenBranch;
             this.elseBranch = elseBranch;
@@ -125,6 +197,7 @@ abstract class Stmt {
         final Expr expression;
 
         Print(Expr expression) {
+            super(PRINT);
             this.expression = expression;
         }
 
@@ -134,11 +207,18 @@ abstract class Stmt {
         }
     }
 
+    /**
+     * A returned call is made as a tail call when "tail" is set, which the
+     * Resolver does outside the loops of the function: a break or continue
+     * in the called function has to reach the loops of the caller.
+     */
     static class Return extends Stmt {
         final Token keyword;
         final Expr value;
+        boolean tail;
 
         Return(Token keyword, Expr value) {
+            super(RETURN);
             this.keyword = keyword;
             this.value = value;
         }
@@ -152,8 +232,10 @@ abstract class Stmt {
     static class Var extends Stmt {
         final Token name;
         final Expr initializer;
+        int slot = -1;
 
         Var(Token name, Expr initializer) {
+            super(VAR);
             this.name = name;
             this.initializer = initializer;
         }
@@ -164,23 +246,14 @@ abstract class Stmt {
         }
     }
 
-    /**
-     * This extra field "increment" will only be used in case of "for" loop.
-     * It is kind of hack to get the "continue" statment working.
-     * This "increment" statment will be executed separately after a "continue"
-     * statement is encountered.
-     * 
-     * This field will be "null" in case of "while" loop.
-     */
     static class While extends Stmt {
         final Expr condition;
         final Stmt body;
-        final Stmt increment;
 
-        While(Expr condition, Stmt body, Stmt increment) {
+        While(Expr condition, Stmt body) {
+            super(WHILE);
             this.condition = condition;
             this.body = body;
-            this.increment = increment;
         }
 
         @Override
@@ -0,0 +1,93 @@
+package com.interpreter.yai;
+
+/**
+ * Name of a variable, property or method, interned by the Scanner.
+ *
+ * There is only one Symbol for each name, so the maps of the runtime
+ * compare them by identity, and the hash of the name is only computed
+ * when it is interned. The table is looked up with the characters read by
+ * the Scanner, so the name is only copied into a String the first time.
+ */
+final class Symbol {
+    // Buckets of a hash table, chained through "next"
+    private static Symbol[] table = new Symbol[256];
+    private static int count = 0;
+
+    static final Symbol INIT = of("init");
+    static final Symbol THIS = of("this");
+    static final Symbol SUPER = of("super");
+
+    final String name;
+    private final int hash;
+    private Symbol next;
+
+    private Symbol(String name, int hash) {
+        this.name = name;
+        this.hash = hash;
+    }
+
+    /**
+     * The Symbol of "name", created the first time.
+     */
+    static Symbol of(String name) {
+        return of(name.toCharArray(), 0, name.length());
+    }
+
+    /**
+     * The Symbol of the characters of "chars" from "start" to "end".
+     */
+    static synchronized Symbol of(char[] chars, int start, int end) {
+        // Same hash as String.hashCode()
+        int hash = 0;
+        for(int i = start; i < end; i++) {
+            hash = 31 * hash + chars[i];
+        }
+
+        for(Symbol symbol = table[hash & (table.length - 1)]; symbol != null; symbol = symbol.next) {
+            if(symbol.hash == hash && symbol.matches(chars, start, end)) {
+                return symbol;
+            }
+        }
+
+        Symbol symbol = new Symbol(new String(chars, start, end - start), hash);
+        if(++count > table.length * 3 / 4) {
+            grow();
+        }
+        int index = hash & (table.length - 1);
+        symbol.next = table[index];
+        table[index] = symbol;
+        return symbol;
+    }
+
+    private boolean matches(char[] chars, int start, int end) {
+        if(name.length() != end - start) return false;
+        for(int i = 0; i < name.length(); i++) {
+            if(name.charAt(i) != chars[start + i]) return false;
+        }
+        return true;
+    }
+
+    private static void grow() {
+        Symbol[] old = table;
+        table = new Symbol[old.length * 2];
+        for(Symbol bucket : old) {
+            while(bucket != null) {
+                Symbol next = bucket.next;
+                int index = bucket.hash & (table.length - 1);
+                bucket.next = table[index];
+                table[index] = bucket;
+                bucket = next;
+            }
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,158 @@
+package com.interpreter.yai;
+
+/**
+ * Tokens the Parser is looking at, pulled from the Scanner as it asks for
+ * them. Only the last LOOKAHEAD tokens are kept, in rings of arrays indexed
+ * by the position of the token in the source, without a Token object.
+ *
+ * The Parser checks the types directly and only asks for the Token of the
+ * ones its AST keeps, which is made then and kept while the token is.
+ */
+class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+    // Lexemes of the keywords and punctuation, which are always the same
+    private static final String[] FIXED_LEXEMES = new String[TYPES.length];
+    static {
+        for(TokenType type : TYPES) {
+            FIXED_LEXEMES[type.ordinal()] = fixedLexeme(type);
+        }
+    }
+    // The Parser only looks at the current and previous tokens
+    private static final int LOOKAHEAD = 4;
+
+    private final Scanner scanner;
+    private final byte[] types = new byte[LOOKAHEAD];
+    private final int[] lines = new int[LOOKAHEAD];
+    // Offset of the first character in the source
+    private final int[] offsets = new int[LOOKAHEAD];
+    // Symbol of a name, or lexeme of a literal, given by the Scanner
+    private final Object[] texts = new Object[LOOKAHEAD];
+    private final Token[] tokens = new Token[LOOKAHEAD];
+    // Tokens scanned so far
+    private int count = 0;
+
+    TokenBuffer(Scanner scanner) {
+        this.scanner = scanner;
+    }
+
+    void add(TokenType type, Object text, int line, int offset) {
+        int slot = count % LOOKAHEAD;
+        types[slot] = (byte)type.ordinal();
+        lines[slot] = line;
+        offsets[slot] = offset;
+        texts[slot] = text;
+        tokens[slot] = null;
+        count++;
+    }
+
+    int size() {
+        return count;
+    }
+
+    TokenType type(int index) {
+        return TYPES[types[slot(index)]];
+    }
+
+    int line(int index) {
+        return lines[slot(index)];
+    }
+
+    int offset(int index) {
+        return offsets[slot(index)];
+    }
+
+    /**
+     * The Token at "index", made the first time.
+     */
+    Token get(int index) {
+        int slot = slot(index);
+        Token token = tokens[slot];
+        if(token == null) {
+            token = materialize(slot);
+            tokens[slot] = token;
+        }
+        return token;
+    }
+
+    /**
+     * Slot of the token at "index", scanning up to it first.
+     */
+    private int slot(int index) {
+        while(index >= count) {
+            scanner.scanNext();
+        }
+        if(index < count - LOOKAHEAD) {
+            throw new IllegalStateException("Token " + index + " is out of the lookahead.");
+        }
+        return index % LOOKAHEAD;
+    }
+
+    private Token materialize(int slot) {
+        TokenType type = TYPES[types[slot]];
+        int line = lines[slot];
+        switch(type) {
+            case IDENTIFIER:
+            case THIS:
+            case SUPER: {
+                // Every token of the same name shares its Symbol and lexeme
+                Symbol symbol = (Symbol)texts[slot];
+                return new Token(type, symbol.name, null, line, symbol);
+            }
+            case STRING: {
+                String lexeme = (String)texts[slot];
+                // Trim the surrounding quotes
+                return new Token(type, lexeme, lexeme.substring(1, lexeme.length() - 1), line);
+            }
+            case NUMBER: {
+                String lexeme = (String)texts[slot];
+                return new Token(type, lexeme, Double.parseDouble(lexeme), line);
+            }
+            case EOF:
+                return new Token(type, "", null, line);
+            default:
+                return new Token(type, FIXED_LEXEMES[type.ordinal()], null, line);
+        }
+    }
+
+    /**
+     * Lexeme of every token of "type", for the nodes that only keep the type
+     * of an operator. Null for names, literals and EOF.
+     */
+    static String lexemeOf(TokenType type) {
+        switch(type) {
+            case IDENTIFIER:
+            case STRING:
+            case NUMBER:
+            case EOF:
+                return null;
+            default:
+                return FIXED_LEXEMES[type.ordinal()];
+        }
+    }
+
+    private static String fixedLexeme(TokenType type) {
+        switch(type) {
+            case LEFT_PAREN: return "(";
+            case RIGHT_PAREN: return ")";
+            case LEFT_BRACE: return "{";
+            case RIGHT_BRACE: return "}";
+            case COMMA: return ",";
+            case DOT: return ".";
+            case MINUS: return "-";
+            case PLUS: return "+";
+            case SEMICOLON: return ";";
+            case SLASH: return "/";
+            case STAR: return "*";
+            case BANG: return "!";
+            case BANG_EQUAL: return "!=";
+            case EQUAL: return "=";
+            case EQUAL_EQUAL: return "==";
+            case GREATER: return ">";
+            case GREATER_EQUAL: return ">=";
+            case LESS: return "<";
+            case LESS_EQUAL: return "<=";
+            // Keywords are their names
+            default: return type.name().toLowerCase();
+        }
+    }
+}
\ No newline at end of file
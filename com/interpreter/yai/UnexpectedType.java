@@ -0,0 +1,16 @@
+package com.interpreter.yai;
+
+/**
+ * Thrown by the unboxed evaluation methods of the Interpreter and
+ * BinaryNode when a value doesn't have the speculated type. Carries the
+ * value, which has already been evaluated.
+ */
+@SuppressWarnings("serial")
+class UnexpectedType extends RuntimeException {
+    final Object value;
+
+    UnexpectedType(Object value) {
+        super(null, null, false, false);
+        this.value = value;
+    }
+}
\ No newline at end of file
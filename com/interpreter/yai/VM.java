@@ -0,0 +1,683 @@
+package com.interpreter.yai;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stack-based virtual machine running the chunks produced by the
+ * BytecodeCompiler, an alternative to walking the AST with the Interpreter.
+ *
+ * "break" and "continue" reach loops of calling functions too, like they do
+ * in the Interpreter, so every running loop registers a handler which
+ * remembers where to jump to and how much of the stack to unwind.
+ */
+class VM {
+    private static final int FRAMES_MAX = 1 << 18;
+    // Value of a global declared but not defined yet
+    private static final Object UNDEFINED = new Object();
+
+    private static class CallFrame {
+        VmClosure closure;
+        int ip;
+        int base;
+    }
+
+    // Globals are numbered by the BytecodeCompiler, in the order they
+    // are first seen, and the instructions refer to them by slot
+    private final Map<String, Integer> globalSlots = new HashMap<>();
+    private String[] globalNames = new String[64];
+    private Object[] globals = new Object[64];
+
+    private Object[] stack = new Object[1024];
+    private int stackTop = 0;
+
+    private CallFrame[] frames = new CallFrame[64];
+    private int frameCount = 0;
+
+    // Loops currently running, innermost last
+    private int[] handlerFrame = new int[16];
+    private int[] handlerStackTop = new int[16];
+    private int[] handlerBreak = new int[16];
+    private int[] handlerContinue = new int[16];
+    private int handlerCount = 0;
+
+    // Sorted by slot, highest first
+    private VmUpvalue openUpvalues = null;
+
+    VM() {
+        for(int i = 0; i < frames.length; i++) {
+            frames[i] = new CallFrame();
+        }
+
+        defineNative(new VmNative("clock", 0) {
+            @Override
+            Object call(Object[] arguments) {
+                return (double)System.currentTimeMillis() / 1000.0;
+            }
+        });
+
+        defineNative(new VmNative("str", 1) {
+            @Override
+            Object call(Object[] arguments) {
+                return Interpreter.stringify(arguments[0]);
+            }
+        });
+    }
+
+    void interpret(VmFunction script) {
+        VmClosure closure = new VmClosure(script);
+        stack[0] = closure;
+        stackTop = 1;
+        try {
+            call(closure, 0);
+            run();
+        } catch(RuntimeError error) {
+            Yai.runtimeError(error);
+            resetStack();
+        }
+    }
+
+    private void run() {
+        CallFrame frame = frames[frameCount - 1];
+        VmClosure closure = frame.closure;
+        byte[] code = closure.function.chunk.code;
+        Object[] constants = closure.function.chunk.constants;
+        int ip = frame.ip;
+        int base = frame.base;
+        Object[] stack = this.stack;
+        int sp = stackTop;
+        Object[] globals = this.globals;
+
+        while(true) {
+            switch(code[ip++]) {
+                case OpCode.CONSTANT: {
+                    int index = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    stack[sp++] = constants[index];
+                    break;
+                }
+                case OpCode.NIL: stack[sp++] = null; break;
+                case OpCode.TRUE: stack[sp++] = true; break;
+                case OpCode.FALSE: stack[sp++] = false; break;
+                case OpCode.POP: sp--; break;
+                case OpCode.GET_LOCAL: {
+                    int slot = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    stack[sp++] = stack[base + slot];
+                    break;
+                }
+                case OpCode.SET_LOCAL: {
+                    int slot = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    stack[base + slot] = stack[sp - 1];
+                    break;
+                }
+                case OpCode.STORE_LOCAL: {
+                    int slot = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    stack[base + slot] = stack[--sp];
+                    break;
+                }
+                case OpCode.GET_GLOBAL: {
+                    int slot = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    Object value = globals[slot];
+                    if(value == UNDEFINED) {
+                        throw undefined(frame, ip, slot);
+                    }
+                    stack[sp++] = value;
+                    break;
+                }
+                case OpCode.DEFINE_GLOBAL: {
+                    int slot = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    globals[slot] = stack[--sp];
+                    break;
+                }
+                case OpCode.SET_GLOBAL: {
+                    int slot = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    if(globals[slot] == UNDEFINED) {
+                        throw undefined(frame, ip, slot);
+                    }
+                    globals[slot] = stack[sp - 1];
+                    break;
+                }
+                case OpCode.STORE_GLOBAL: {
+                    int slot = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    if(globals[slot] == UNDEFINED) {
+                        throw undefined(frame, ip, slot);
+                    }
+                    globals[slot] = stack[--sp];
+                    break;
+                }
+                case OpCode.GET_UPVALUE: {
+                    VmUpvalue upvalue = closure.upvalues[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    stack[sp++] = upvalue.slot >= 0 ? stack[upvalue.slot] : upvalue.closed;
+                    break;
+                }
+                case OpCode.SET_UPVALUE: {
+                    VmUpvalue upvalue = closure.upvalues[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    if(upvalue.slot >= 0) {
+                        stack[upvalue.slot] = stack[sp - 1];
+                    } else {
+                        upvalue.closed = stack[sp - 1];
+                    }
+                    break;
+                }
+                case OpCode.STORE_UPVALUE: {
+                    VmUpvalue upvalue = closure.upvalues[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    if(upvalue.slot >= 0) {
+                        stack[upvalue.slot] = stack[--sp];
+                    } else {
+                        upvalue.closed = stack[--sp];
+                    }
+                    break;
+                }
+                case OpCode.GET_PROPERTY: {
+                    String name = (String)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    Object receiver = stack[sp - 1];
+                    if(!(receiver instanceof VmInstance)) {
+                        throw error(frame, ip, "Only instances have properties.");
+                    }
+                    VmInstance instance = (VmInstance)receiver;
+                    Object value = instance.fields.get(name);
+                    if(value != null || instance.fields.containsKey(name)) {
+                        stack[sp - 1] = value;
+                        break;
+                    }
+                    VmClosure method = instance.klass.methods.get(name);
+                    if(method == null) {
+                        throw error(frame, ip, "Undefined property '" + name + "'.");
+                    }
+                    stack[sp - 1] = new VmBoundMethod(instance, method);
+                    break;
+                }
+                case OpCode.SET_PROPERTY: {
+                    String name = (String)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    Object receiver = stack[sp - 2];
+                    if(!(receiver instanceof VmInstance)) {
+                        throw error(frame, ip, "Only instances have fields.");
+                    }
+                    Object value = stack[--sp];
+                    ((VmInstance)receiver).fields.put(name, value);
+                    stack[sp - 1] = value;
+                    break;
+                }
+                case OpCode.GET_SUPER: {
+                    String name = (String)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    VmClass superclass = (VmClass)stack[--sp];
+                    VmClosure method = superclass.methods.get(name);
+                    if(method == null) {
+                        throw error(frame, ip, "Undefined property '" + name + "'.");
+                    }
+                    stack[sp - 1] = new VmBoundMethod(stack[sp - 1], method);
+                    break;
+                }
+                case OpCode.EQUAL: {
+                    Object right = stack[--sp];
+                    stack[sp - 1] = Interpreter.isEqual(stack[sp - 1], right);
+                    break;
+                }
+                case OpCode.NOT_EQUAL: {
+                    Object right = stack[--sp];
+                    stack[sp - 1] = !Interpreter.isEqual(stack[sp - 1], right);
+                    break;
+                }
+                case OpCode.GREATER: {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    if(!(left instanceof Double && right instanceof Double)) {
+                        throw error(frame, ip, "Operands must be a number.");
+                    }
+                    stack[sp - 1] = (double)left > (double)right;
+                    break;
+                }
+                case OpCode.GREATER_EQUAL: {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    if(!(left instanceof Double && right instanceof Double)) {
+                        throw error(frame, ip, "Operands must be a number.");
+                    }
+                    stack[sp - 1] = (double)left >= (double)right;
+                    break;
+                }
+                case OpCode.LESS: {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    if(!(left instanceof Double && right instanceof Double)) {
+                        throw error(frame, ip, "Operands must be a number.");
+                    }
+                    stack[sp - 1] = (double)left < (double)right;
+                    break;
+                }
+                case OpCode.LESS_EQUAL: {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    if(!(left instanceof Double && right instanceof Double)) {
+                        throw error(frame, ip, "Operands must be a number.");
+                    }
+                    stack[sp - 1] = (double)left <= (double)right;
+                    break;
+                }
+                case OpCode.ADD: {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    if(left instanceof Double && right instanceof Double) {
+                        stack[sp - 1] = (double)left + (double)right;
+                    } else if(left instanceof CharSequence && right instanceof CharSequence) {
+                        stack[sp - 1] = Rope.concat((CharSequence)left, (CharSequence)right);
+                    } else {
+                        throw error(frame, ip, "Operands must be two Numbers or two Strings");
+                    }
+                    break;
+                }
+                case OpCode.ADD_CONSTANT: {
+                    Object right = constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    Object left = stack[sp - 1];
+                    if(!(left instanceof Double)) {
+                        throw error(frame, ip, "Operands must be two Numbers or two Strings");
+                    }
+                    stack[sp - 1] = (double)left + (double)right;
+                    break;
+                }
+                case OpCode.SUBTRACT_CONSTANT: {
+                    Object right = constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    Object left = stack[sp - 1];
+                    if(!(left instanceof Double)) {
+                        throw error(frame, ip, "Operands must be a number.");
+                    }
+                    stack[sp - 1] = (double)left - (double)right;
+                    break;
+                }
+                case OpCode.SUBTRACT: {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    if(!(left instanceof Double && right instanceof Double)) {
+                        throw error(frame, ip, "Operands must be a number.");
+                    }
+                    stack[sp - 1] = (double)left - (double)right;
+                    break;
+                }
+                case OpCode.MULTIPLY: {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    if(!(left instanceof Double && right instanceof Double)) {
+                        throw error(frame, ip, "Operands must be a number.");
+                    }
+                    stack[sp - 1] = (double)left * (double)right;
+                    break;
+                }
+                case OpCode.DIVIDE: {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    if(!(left instanceof Double && right instanceof Double)) {
+                        throw error(frame, ip, "Operands must be a number.");
+                    }
+                    stack[sp - 1] = (double)left / (double)right;
+                    break;
+                }
+                case OpCode.NOT:
+                    stack[sp - 1] = !Interpreter.isTruthy(stack[sp - 1]);
+                    break;
+                case OpCode.NEGATE: {
+                    Object operand = stack[sp - 1];
+                    if(!(operand instanceof Double)) {
+                        throw error(frame, ip, "Operand must be a number.");
+                    }
+                    stack[sp - 1] = -(double)operand;
+                    break;
+                }
+                case OpCode.PRINT:
+                    System.out.println(Interpreter.stringify(stack[--sp]));
+                    break;
+                case OpCode.JUMP: {
+                    int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2 + offset;
+                    break;
+                }
+                case OpCode.JUMP_IF_FALSE: {
+                    int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    if(!Interpreter.isTruthy(stack[sp - 1])) ip += offset;
+                    break;
+                }
+                case OpCode.JUMP_IF_TRUE: {
+                    int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    if(Interpreter.isTruthy(stack[sp - 1])) ip += offset;
+                    break;
+                }
+                case OpCode.POP_JUMP_IF_FALSE: {
+                    int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    if(!Interpreter.isTruthy(stack[--sp])) ip += offset;
+                    break;
+                }
+                case OpCode.JUMP_IF_NOT_GREATER: {
+                    int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    Object right = stack[--sp];
+                    Object left = stack[--sp];
+                    if(!(left instanceof Double && right instanceof Double)) {
+                        throw error(frame, ip, "Operands must be a number.");
+                    }
+                    if(!((double)left > (double)right)) ip += offset;
+                    break;
+                }
+                case OpCode.JUMP_IF_NOT_GREATER_EQUAL: {
+                    int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    Object right = stack[--sp];
+                    Object left = stack[--sp];
+                    if(!(left instanceof Double && right instanceof Double)) {
+                        throw error(frame, ip, "Operands must be a number.");
+                    }
+                    if(!((double)left >= (double)right)) ip += offset;
+                    break;
+                }
+                case OpCode.JUMP_IF_NOT_LESS: {
+                    int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    Object right = stack[--sp];
+                    Object left = stack[--sp];
+                    if(!(left instanceof Double && right instanceof Double)) {
+                        throw error(frame, ip, "Operands must be a number.");
+                    }
+                    if(!((double)left < (double)right)) ip += offset;
+                    break;
+                }
+                case OpCode.JUMP_IF_NOT_LESS_EQUAL: {
+                    int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    Object right = stack[--sp];
+                    Object left = stack[--sp];
+                    if(!(left instanceof Double && right instanceof Double)) {
+                        throw error(frame, ip, "Operands must be a number.");
+                    }
+                    if(!((double)left <= (double)right)) ip += offset;
+                    break;
+                }
+                case OpCode.LOOP: {
+                    int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2 - offset;
+                    break;
+                }
+                case OpCode.CALL: {
+                    int argCount = code[ip++] & 0xff;
+                    frame.ip = ip;
+                    stackTop = sp;
+                    callValue(stack[sp - argCount - 1], argCount);
+
+                    frame = frames[frameCount - 1];
+                    closure = frame.closure;
+                    code = closure.function.chunk.code;
+                    constants = closure.function.chunk.constants;
+                    ip = frame.ip;
+                    base = frame.base;
+                    stack = this.stack;
+                    sp = stackTop;
+                    break;
+                }
+                case OpCode.CLOSURE: {
+                    VmFunction function = (VmFunction)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    VmClosure created = new VmClosure(function);
+                    for(int i = 0; i < created.upvalues.length; i++) {
+                        boolean isLocal = code[ip] == 1;
+                        int index = ((code[ip + 1] & 0xff) << 8) | (code[ip + 2] & 0xff);
+                        ip += 3;
+                        created.upvalues[i] = isLocal
+                            ? captureUpvalue(base + index)
+                            : closure.upvalues[index];
+                    }
+                    stack[sp++] = created;
+                    break;
+                }
+                case OpCode.CLOSE_UPVALUE:
+                    closeUpvalues(sp - 1);
+                    sp--;
+                    break;
+                case OpCode.RETURN: {
+                    Object result = stack[--sp];
+                    closeUpvalues(base);
+                    frameCount--;
+                    while(handlerCount > 0 && handlerFrame[handlerCount - 1] >= frameCount) {
+                        handlerCount--;
+                    }
+                    if(frameCount == 0) {
+                        stackTop = 0;
+                        return;
+                    }
+                    sp = base;
+                    stack[sp++] = result;
+
+                    frame = frames[frameCount - 1];
+                    closure = frame.closure;
+                    code = closure.function.chunk.code;
+                    constants = closure.function.chunk.constants;
+                    ip = frame.ip;
+                    base = frame.base;
+                    break;
+                }
+                case OpCode.CLASS: {
+                    String name = (String)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    stack[sp++] = new VmClass(name);
+                    break;
+                }
+                case OpCode.INHERIT: {
+                    Object superclass = stack[sp - 2];
+                    if(!(superclass instanceof VmClass)) {
+                        throw error(frame, ip, "Superclass must be a class.");
+                    }
+                    ((VmClass)stack[--sp]).inherit((VmClass)superclass);
+                    break;
+                }
+                case OpCode.METHOD: {
+                    String name = (String)constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    VmClosure method = (VmClosure)stack[--sp];
+                    ((VmClass)stack[sp - 1]).addMethod(name, method);
+                    break;
+                }
+                case OpCode.LOOP_ENTER: {
+                    int breakOffset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    int continueOffset = ((code[ip + 2] & 0xff) << 8) | (code[ip + 3] & 0xff);
+                    ip += 4;
+                    pushHandler(frameCount - 1, sp, ip + breakOffset, ip + continueOffset);
+                    break;
+                }
+                case OpCode.LOOP_EXIT:
+                    handlerCount--;
+                    break;
+                case OpCode.BREAK:
+                case OpCode.CONTINUE: {
+                    boolean isBreak = code[ip - 1] == OpCode.BREAK;
+                    if(handlerCount == 0) {
+                        throw error(frame, ip, "'" + (isBreak ? "break" : "continue")
+                            + "' not properly in loop.");
+                    }
+                    // Unwind the calls made from inside the loop
+                    int handler = handlerCount - 1;
+                    frameCount = handlerFrame[handler] + 1;
+                    int loopStackTop = handlerStackTop[handler];
+                    closeUpvalues(loopStackTop);
+                    sp = loopStackTop;
+
+                    frame = frames[frameCount - 1];
+                    closure = frame.closure;
+                    code = closure.function.chunk.code;
+                    constants = closure.function.chunk.constants;
+                    base = frame.base;
+                    ip = isBreak ? handlerBreak[handler] : handlerContinue[handler];
+                    break;
+                }
+                default:
+                    throw error(frame, ip, "Unknown opcode " + code[ip - 1] + ".");
+            }
+        }
+    }
+
+    private void callValue(Object callee, int argCount) {
+        if(callee instanceof VmClosure) {
+            call((VmClosure)callee, argCount);
+            return;
+        }
+        if(callee instanceof VmBoundMethod) {
+            VmBoundMethod bound = (VmBoundMethod)callee;
+            stack[stackTop - argCount - 1] = bound.receiver;
+            call(bound.method, argCount);
+            return;
+        }
+        if(callee instanceof VmClass) {
+            VmClass klass = (VmClass)callee;
+            stack[stackTop - argCount - 1] = new VmInstance(klass);
+            if(klass.initializer != null) {
+                call(klass.initializer, argCount);
+            } else if(argCount != 0) {
+                throw callError("Expected 0 arguments but got " + argCount + ".");
+            }
+            return;
+        }
+        if(callee instanceof VmNative) {
+            VmNative function = (VmNative)callee;
+            if(argCount != function.arity) {
+                throw callError("Expected " + function.arity
+                    + " arguments but got " + argCount + ".");
+            }
+            Object[] arguments = Arrays.copyOfRange(stack, stackTop - argCount, stackTop);
+            Object result = function.call(arguments);
+            stackTop -= argCount + 1;
+            stack[stackTop++] = result;
+            return;
+        }
+        throw callError("Can only call functions and classes.");
+    }
+
+    private void call(VmClosure closure, int argCount) {
+        VmFunction function = closure.function;
+        if(argCount != function.arity) {
+            throw callError("Expected " + function.arity
+                + " arguments but got " + argCount + ".");
+        }
+        if(frameCount == FRAMES_MAX) {
+            throw callError("Stack overflow.");
+        }
+        if(frameCount == frames.length) {
+            frames = Arrays.copyOf(frames, frameCount * 2);
+            for(int i = frameCount; i < frames.length; i++) {
+                frames[i] = new CallFrame();
+            }
+        }
+
+        int base = stackTop - argCount - 1;
+        if(base + function.maxStack > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(stack.length * 2, base + function.maxStack));
+        }
+
+        CallFrame frame = frames[frameCount++];
+        frame.closure = closure;
+        frame.ip = 0;
+        frame.base = base;
+    }
+
+    private RuntimeError undefined(CallFrame frame, int ip, int slot) {
+        return error(frame, ip, "Undefined variable '" + globalNames[slot] + "'.");
+    }
+
+    private RuntimeError callError(String message) {
+        CallFrame frame = frames[frameCount - 1];
+        return error(frame, frame.ip, message);
+    }
+
+    private RuntimeError error(CallFrame frame, int ip, String message) {
+        int line = frame.closure.function.chunk.lines[ip - 1];
+        return new RuntimeError(line, message);
+    }
+
+    private void pushHandler(int frame, int loopStackTop, int breakTarget, int continueTarget) {
+        if(handlerCount == handlerFrame.length) {
+            int capacity = handlerCount * 2;
+            handlerFrame = Arrays.copyOf(handlerFrame, capacity);
+            handlerStackTop = Arrays.copyOf(handlerStackTop, capacity);
+            handlerBreak = Arrays.copyOf(handlerBreak, capacity);
+            handlerContinue = Arrays.copyOf(handlerContinue, capacity);
+        }
+        handlerFrame[handlerCount] = frame;
+        handlerStackTop[handlerCount] = loopStackTop;
+        handlerBreak[handlerCount] = breakTarget;
+        handlerContinue[handlerCount] = continueTarget;
+        handlerCount++;
+    }
+
+    private VmUpvalue captureUpvalue(int slot) {
+        VmUpvalue previous = null;
+        VmUpvalue upvalue = openUpvalues;
+        while(upvalue != null && upvalue.slot > slot) {
+            previous = upvalue;
+            upvalue = upvalue.next;
+        }
+        if(upvalue != null && upvalue.slot == slot) {
+            return upvalue;
+        }
+
+        VmUpvalue created = new VmUpvalue(slot, upvalue);
+        if(previous == null) {
+            openUpvalues = created;
+        } else {
+            previous.next = created;
+        }
+        return created;
+    }
+
+    private void closeUpvalues(int last) {
+        while(openUpvalues != null && openUpvalues.slot >= last) {
+            VmUpvalue upvalue = openUpvalues;
+            upvalue.closed = stack[upvalue.slot];
+            upvalue.slot = -1;
+            openUpvalues = upvalue.next;
+        }
+    }
+
+    private void resetStack() {
+        Arrays.fill(stack, null);
+        stackTop = 0;
+        frameCount = 0;
+        handlerCount = 0;
+        openUpvalues = null;
+    }
+
+    /**
+     * The slot of the global "name", given to it the first time it is
+     * asked for.
+     */
+    int globalSlot(String name) {
+        Integer slot = globalSlots.get(name);
+        if(slot != null) return slot;
+
+        int created = globalSlots.size();
+        if(created == globals.length) {
+            globalNames = Arrays.copyOf(globalNames, created * 2);
+            globals = Arrays.copyOf(globals, created * 2);
+        }
+        globalNames[created] = name;
+        globals[created] = UNDEFINED;
+        globalSlots.put(name, created);
+        return created;
+    }
+
+    private void defineNative(VmNative function) {
+        globals[globalSlot(function.name)] = function;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,33 @@
+package com.interpreter.yai;
+
+import java.util.HashMap;
+import java.util.Map;
+
+class VmClass {
+    final String name;
+    final Map<String, VmClosure> methods = new HashMap<>();
+    VmClosure initializer;
+
+    VmClass(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Classes can't be changed once declared, so copying the superclass'
+     * methods down is the same as walking up the chain on every lookup.
+     */
+    void inherit(VmClass superclass) {
+        methods.putAll(superclass.methods);
+        initializer = superclass.initializer;
+    }
+
+    void addMethod(String name, VmClosure method) {
+        methods.put(name, method);
+        if(name.equals("init")) initializer = method;
+    }
+
+    @Override
+    public String toString() {
+        return "<" + name + " class>";
+    }
+}
\ No newline at end of file
@@ -0,0 +1,23 @@
+package com.interpreter.yai;
+
+/**
+ * A compiled function, the VM wraps it in a VmClosure before calling it.
+ */
+class VmFunction {
+    final String name;
+    final int arity;
+    final Chunk chunk = new Chunk();
+    int upvalueCount = 0;
+    // Stack slots needed by one call, locals included
+    int maxStack = 0;
+
+    VmFunction(String name, int arity) {
+        this.name = name;
+        this.arity = arity;
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + name + ">";
+    }
+}
\ No newline at end of file
@@ -0,0 +1,21 @@
+package com.interpreter.yai;
+
+/**
+ * A function implemented in Java and called by the VM.
+ */
+abstract class VmNative {
+    final String name;
+    final int arity;
+
+    VmNative(String name, int arity) {
+        this.name = name;
+        this.arity = arity;
+    }
+
+    abstract Object call(Object[] arguments);
+
+    @Override
+    public String toString() {
+        return "<native fn " + name + ">";
+    }
+}
\ No newline at end of file
@@ -0,0 +1,17 @@
+package com.interpreter.yai;
+
+/**
+ * A variable captured by a closure. While the variable is still on the
+ * VM stack "slot" is its index there, once it goes out of scope the value
+ * is moved into "closed" and "slot" becomes -1.
+ */
+class VmUpvalue {
+    int slot;
+    Object closed;
+    VmUpvalue next;
+
+    VmUpvalue(int slot, VmUpvalue next) {
+        this.slot = slot;
+        this.next = next;
+    }
+}
\ No newline at end of file
@@ -3,9 +3,13 @@ package com.interpreter.yai;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.nio.charset.Charset;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -19,22 +23,180 @@ public class Yai {
     static boolean hadError = false;
     static boolean hadRunTimeError = false;
 
-    private static final Interpreter interpreter = new Interpreter();
+    private static Interpreter interpreter;
+    // Only created when running with "--engine=vm"
+    private static VM vm = null;
+    // Calls before a function is compiled by the Jit, unless given with "--jit="
+    private static final int JIT_THRESHOLD = 1000;
+    private static boolean icStats = false;
+    private static boolean optimize = true;
+    private static boolean optimizerStats = false;
+    // Kept for the stats of every line given to the prompt
+    private static final Optimizer optimizer = new Optimizer();
+    private static boolean useCache = true;
+    // Parse the bodies of top-level functions on their first call, which is
+    // also when the errors in a body are reported, see the README
+    private static boolean lazy = false;
+    // Parse and resolve the bodies of top-level functions on many threads
+    private static boolean parallel = false;
+    private static Path cacheDirectory = AstCache.directory();
 
-    public static void main(final String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: yai [script]");
-            System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        List<String> scripts = new ArrayList<>();
+        boolean specialize = false;
+        boolean switchDispatch = false;
+        long stackSize = 0;
+        Jit jit = null;
+        for(String arg : args) {
+            if(arg.equals("--engine=vm")) {
+                vm = new VM();
+            } else if(arg.equals("--engine=tree")) {
+                vm = null;
+            } else if(arg.equals("--specialize")) {
+                specialize = true;
+            } else if(arg.equals("--dispatch=switch")) {
+                switchDispatch = true;
+            } else if(arg.equals("--dispatch=visitor")) {
+                switchDispatch = false;
+            } else if(arg.equals("--ic-stats")) {
+                icStats = true;
+            } else if(arg.equals("--no-optimize")) {
+                optimize = false;
+            } else if(arg.equals("--optimizer-stats")) {
+                optimizerStats = true;
+            } else if(arg.equals("--no-cache")) {
+                useCache = false;
+            } else if(arg.equals("--lazy")) {
+                lazy = true;
+            } else if(arg.equals("--parallel")) {
+                parallel = true;
+            } else if(arg.startsWith("--cache-dir=")) {
+                cacheDirectory = Paths.get(arg.substring("--cache-dir=".length()));
+            } else if(arg.equals("--jit")) {
+                jit = new Jit(JIT_THRESHOLD);
+            } else if(arg.startsWith("--jit=")) {
+                jit = new Jit(parseThreshold(arg.substring("--jit=".length())));
+            } else if(arg.startsWith("--stack-size=")) {
+                stackSize = parseStackSize(arg.substring("--stack-size=".length()));
+            } else if(arg.startsWith("--")) {
+                usage();
+            } else {
+                scripts.add(arg);
+            }
+        }
+        interpreter = new Interpreter(specialize, jit, switchDispatch);
+        if(vm != null) {
+            // The bytecode compiler needs every body up front
+            lazy = false;
+        } else if(lazy) {
+            // Neither sees the bodies, which are only parsed when called
+            optimize = false;
+            useCache = false;
+        }
+
+        if (scripts.size() > 1) {
+            usage();
+        }
+        if(stackSize == 0) {
+            start(scripts);
+            return;
+        }
+
+        // Calls of the tree-walker and the Jit take Java stack, of which
+        // only a new thread can be given more than the default
+        IOException[] error = new IOException[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                start(scripts);
+            } catch(IOException exception) {
+                error[0] = exception;
+            }
+        }, "yai", stackSize);
+        thread.setUncaughtExceptionHandler((t, exception) -> {
+            exception.printStackTrace();
+            System.exit(1);
+        });
+        thread.start();
+        thread.join();
+        if(error[0] != null) throw error[0];
+    }
+
+    private static void start(List<String> scripts) throws IOException {
+        if (scripts.size() == 1) {
+            runFile(scripts.get(0));
         } else {
             runPrompt();
         }
     }
 
+    private static void usage() {
+        System.out.println("Usage: yai [--engine=tree|vm] [--specialize] [--jit[=calls]] [--ic-stats]\n"
+            + "           [--no-optimize] [--optimizer-stats] [--stack-size=megabytes]\n"
+            + "           [--no-cache] [--cache-dir=directory] [--lazy]\n"
+            + "           [--parallel] [--dispatch=switch|visitor] [script]");
+        System.exit(64);
+    }
+
+    private static int parseThreshold(String calls) {
+        try {
+            int threshold = Integer.parseInt(calls);
+            if(threshold > 0) return threshold;
+        } catch(NumberFormatException error) {
+            // Reported below
+        }
+        usage();
+        return 0;
+    }
+
+    private static long parseStackSize(String megabytes) {
+        try {
+            long size = Long.parseLong(megabytes);
+            if(size > 0 && size <= 1 << 20) return size << 20;
+        } catch(NumberFormatException error) {
+            // Reported below
+        }
+        usage();
+        return 0;
+    }
+
     private static void runFile(final String path) throws IOException {
-        final byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
+        Path script = Paths.get(path);
+        Path cache = null;
+        byte[] hash = null;
+        List<Stmt> statements = null;
+        if(useCache && AstCache.available()) {
+            hash = AstCache.hash(script);
+            cache = AstCache.pathOf(cacheDirectory, hash);
+            statements = AstCache.load(cache, hash, interpreter.globals);
+        }
+
+        if(lazy) {
+            // The skipped bodies are parsed from the source later
+            String source = new String(Files.readAllBytes(script), StandardCharsets.UTF_8);
+            statements = resolve(new Scanner(source), source);
+        } else if(statements == null) {
+            if(parallel) {
+                // Each body is parsed from the source on its own
+                String source = new String(Files.readAllBytes(script), StandardCharsets.UTF_8);
+                statements = ParallelFrontEnd.resolve(source, interpreter.globals);
+            } else {
+                // The Scanner reads the file as the Parser goes, decoding it as UTF-8
+                try(Reader reader = new InputStreamReader(Files.newInputStream(script),
+                        StandardCharsets.UTF_8)) {
+                    statements = resolve(new Scanner(reader), null);
+                } catch(UncheckedIOException error) {
+                    throw error.getCause();
+                }
+            }
+            if(statements != null && cache != null) {
+                AstCache.save(cache, hash, statements);
+            }
+        }
+        if(statements != null) {
+            run(statements);
+        }
+        if(icStats) System.err.println(PropertyCache.stats());
+        if(optimizerStats) System.err.println(optimizer.stats());
 
         // Indicate an error in the exit code
         if(hadError) System.exit(65);
@@ -47,33 +209,60 @@ public class Yai {
 
         while (true) {
             System.out.print("> ");
-            run(bufferedReader.readLine());
+            String line = bufferedReader.readLine();
+            List<Stmt> statements = resolve(new Scanner(line), lazy ? line : null);
+            if(statements != null) {
+                run(statements);
+            }
             hadError = false;
         }
     }
 
-    private static void run(final String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
+    /**
+     * Returns the resolved statements, or null after a syntax or resolution
+     * error. The bodies of top-level functions are left to LazyBody when
+     * "source" is given.
+     */
+    private static List<Stmt> resolve(final Scanner scanner, final String source) {
+        TokenBuffer tokens = scanner.scanTokens();
 
-        Parser parser = new Parser(tokens);
+        Parser parser = new Parser(tokens, source);
         List<Stmt> statements = parser.parse();
 
         // Stop if there was syntax error
-        if(hadError) return;
+        if(hadError) return null;
 
-        Resolver resolver = new Resolver(interpreter);
+        Resolver resolver = new Resolver(interpreter.globals);
         resolver.resolve(statements);
 
         // Stop if there was a resolution error
-        if(hadError) return;
+        if(hadError) return null;
+        return statements;
+    }
+
+    private static void run(final List<Stmt> statements) {
+        if(optimize) {
+            optimizer.optimize(statements);
+        }
+
+        if(vm != null) {
+            BytecodeCompiler compiler = new BytecodeCompiler(vm);
+            VmFunction script = compiler.compile(statements);
+
+            // Stop if the program doesn't fit in the bytecode format
+            if(hadError) return;
+
+            vm.interpret(script);
+            return;
+        }
 
         interpreter.interpret(statements);
     }
 
     private static void report(int line, String where, String message) {
-        System.err.println(
-            "[Line " + line + "] Error " + where + ": " + message);
+        String error = "[Line " + line + "] Error " + where + ": " + message;
+        if(ParallelFrontEnd.collect(line, error)) return;
+        System.err.println(error);
         hadError = true;
     }
 
@@ -90,7 +279,7 @@ public class Yai {
     }
 
     static void runtimeError(RuntimeError error) {
-        System.err.println(error.getMessage() + "\n[Line " + error.token.line + "]");
+        System.err.println(error.getMessage() + "\n[Line " + error.line + "]");
         hadRunTimeError = true;
     }
 }
\ No newline at end of file
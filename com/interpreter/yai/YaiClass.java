@@ -6,15 +6,19 @@ import java.util.Map;
 class YaiClass implements YaiCallable {
     final String name;
     final YaiClass superclass;
-    private final Map<String, YaiFunction> methods;
+    private final Map<Symbol, YaiFunction> methods;
+    // Shape of the instances before they get any field
+    final Shape shape = new Shape(this);
+    // Most fields any instance had so far, to size the next ones
+    int fieldCount = 0;
 
-    YaiClass(String name, YaiClass superclass, Map<String, YaiFunction> methods) {
+    YaiClass(String name, YaiClass superclass, Map<Symbol, YaiFunction> methods) {
         this.name = name;
         this.superclass = superclass;
         this.methods = methods;
     }
 
-    YaiFunction findMethod(String name) {
+    YaiFunction findMethod(Symbol name) {
         if(methods.containsKey(name)) {
             return methods.get(name);
         }
@@ -26,7 +30,7 @@ class YaiClass implements YaiCallable {
 
     @Override
     public int arity() {
-        YaiFunction initializer = findMethod("init");
+        YaiFunction initializer = findMethod(Symbol.INIT);
         if(initializer != null) {
             return initializer.arity();
         }
@@ -36,9 +40,9 @@ class YaiClass implements YaiCallable {
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
         YaiInstance instance = new YaiInstance(this);
-        YaiFunction initializer = findMethod("init");
+        YaiFunction initializer = findMethod(Symbol.INIT);
         if(initializer != null) {
-            initializer.bind(instance).call(interpreter, arguments);
+            initializer.invoke(interpreter, instance, arguments);
         }
         return instance;
     }
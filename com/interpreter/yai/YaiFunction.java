@@ -6,45 +6,103 @@ class YaiFunction implements YaiCallable {
     private final Stmt.Function declaration;
     private final Environment closure;
     private final boolean isInitializer;
+    // "this" of a method bound to an instance
+    private final YaiInstance receiver;
 
     YaiFunction(Stmt.Function declaration, Environment closure, boolean isInitializer) {
+        this(declaration, closure, isInitializer, null);
+    }
+
+    private YaiFunction(Stmt.Function declaration, Environment closure,
+            boolean isInitializer, YaiInstance receiver) {
         this.declaration = declaration;
         this.closure = closure;
         this.isInitializer = isInitializer;
+        this.receiver = receiver;
     }
 
     YaiFunction bind(YaiInstance instance) {
-        Environment environment = new Environment(closure);
-        environment.define("this", instance);
-        return new YaiFunction(declaration, environment, isInitializer);
+        return new YaiFunction(declaration, closure, isInitializer, instance);
+    }
+
+    /**
+     * True for a method looked up in its class but not bound, which can
+     * only be called through invoke().
+     */
+    boolean isUnbound() {
+        return declaration.isMethod && receiver == null;
+    }
+
+    boolean isDeclaredBy(Stmt.Function function) {
+        return declaration == function;
     }
 
     @Override
     public int arity() {
-        return declaration.params.size();
+        return declaration.params.length;
     }
 
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
-        Environment environment = new Environment(closure);
+        return invoke(interpreter, receiver, arguments);
+    }
 
-        for(int i = 0; i < declaration.params.size(); i++) {
-            environment.define(declaration.params.get(i).lexeme, arguments.get(i));
+    /**
+     * Calls the function with "instance" as "this" if it is a method.
+     *
+     * The calls it returns as Interpreter.TAIL_CALL are made here in turn,
+     * so they don't take any Java stack.
+     */
+    Object invoke(Interpreter interpreter, YaiInstance instance, List<Object> arguments) {
+        YaiFunction function = this;
+        Object value = function.execute(interpreter, instance, arguments);
+        while(value == Interpreter.TAIL_CALL) {
+            function = interpreter.tailFunction;
+            instance = interpreter.tailReceiver != null ? interpreter.tailReceiver : function.receiver;
+            arguments = interpreter.tailArguments;
+            interpreter.tailFunction = null;
+            interpreter.tailReceiver = null;
+            interpreter.tailArguments = null;
+            value = function.execute(interpreter, instance, arguments);
         }
+        return value;
+    }
+
+    private Object execute(Interpreter interpreter, YaiInstance instance, List<Object> arguments) {
+        if(declaration.lazyBody != null) {
+            LazyBody.load(declaration, interpreter.globals);
+        }
+        Environment environment = new Environment(closure, declaration.scopeSize,
+            interpreter.specialize && !declaration.captured);
 
-        try {
-            interpreter.executeBlock(declaration.body, environment);
-        } catch(Return returnValue) {
+        // Parameters take the first slots of the function's scope, after
+        // the receiver of a method
+        int first = 0;
+        if(declaration.isMethod) {
+            environment.define(0, instance);
+            first = 1;
+        }
+        for(int i = 0; i < declaration.params.length; i++) {
+            environment.define(first + i, arguments.get(i));
+        }
+
+        JitCode code = declaration.code;
+        if(code == null && interpreter.jit != null) {
+            code = interpreter.jit.compileIfHot(declaration);
+        }
+        if(code != null) {
+            Object value = code.invoke(interpreter, environment);
             if(isInitializer) {
-                return closure.getAt(0, "this");
+                return instance;
             }
-            return returnValue.value;
+            return value;
         }
 
+        Object value = interpreter.executeBody(declaration.body, environment);
         if(isInitializer) {
-            return closure.getAt(0, "this");
+            return instance;
         }
-        return null;
+        return value;
     }
 
     @Override
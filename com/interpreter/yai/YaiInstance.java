@@ -1,21 +1,25 @@
 package com.interpreter.yai;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 class YaiInstance {
-    private YaiClass klass;
-    private final Map<String, Object> fields = new HashMap<>();
+    final YaiClass klass;
+    Shape shape;
+    // Field values, in the slots given by the shape
+    Object[] values;
 
     YaiInstance(YaiClass klass) {
         this.klass = klass;
+        this.shape = klass.shape;
+        this.values = new Object[klass.fieldCount];
     }
 
     Object get(Token name) {
-        if(fields.containsKey(name.lexeme)) {
-            return fields.get(name.lexeme);
+        int slot = shape.slotOf(name.symbol);
+        if(slot != -1) {
+            return values[slot];
         }
-        YaiFunction method = klass.findMethod(name.lexeme);
+        YaiFunction method = klass.findMethod(name.symbol);
         if(method != null) {
             return method.bind(this);
         }
@@ -23,7 +27,26 @@ class YaiInstance {
     }
 
     void set(Token name, Object value) {
-        fields.put(name.lexeme, value);
+        int slot = shape.slotOf(name.symbol);
+        if(slot == -1) {
+            slot = shape.size;
+            grow(shape.with(name.symbol));
+        }
+        values[slot] = value;
+    }
+
+    /**
+     * Moves to "next", the shape with one more field than the current one.
+     */
+    void grow(Shape next) {
+        if(next.size > values.length) {
+            values = Arrays.copyOf(values, Math.max(next.size, values.length * 2));
+        }
+        shape = next;
+        // Later instances start with room for every field this one has
+        if(next.size > klass.fieldCount) {
+            klass.fieldCount = next.size;
+        }
     }
 
     @Override
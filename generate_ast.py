@@ -10,6 +10,16 @@ and run this code using `make generate_ast` and it will add the
 new sub-types with the required code (fields, construction, 
 overridden method) in com/interpreter/yai/Expr.java.
 
+Every sub-type also gets an integer kind tag, a constant of the base class
+named after it (Expr.BINARY for Expr.Binary), which the Interpreter
+switches on instead of calling accept().
+
+Fields listed under "resolved" are not constructor parameters, they are
+left mutable so they can be filled in after parsing, by the Resolver (scope
+depths, slot indices, scope sizes, scopes captured by closures) or by the
+Interpreter at runtime (specialized nodes, call counts and compiled code,
+inline caches).
+
 It doesn't changes the com/interpreter/yai/AstPrinter.java file.
 You will have to manually override each of the new methods there.
 
@@ -38,6 +48,17 @@ def define_visitor(file: IO, basename: str, subclasses: Dict[str, List[str]]):
     file.write(f'{TAB}}}\n')
 
 
+def tag_of(subclass: str) -> str:
+    return subclass.upper()
+
+
+def define_tags(file: IO, subclasses: Dict[str, List[str]]):
+    file.write('\n')
+    file.write(f'{TAB}// Kind tags of the sub-types, in the order they are declared\n')
+    for tag, subclass in enumerate(subclasses):
+        file.write(f'{TAB}static final int {tag_of(subclass)} = {tag};\n')
+
+
 def write_comment(file: IO, comments):
     file.write(f'{TAB}/**\n')
     for comment in comments:
@@ -45,7 +66,8 @@ def write_comment(file: IO, comments):
     file.write(f'{TAB} */\n')
 
 
-def define_subtypes(file: IO, basename: str, subclasses: Dict[str, List[str]], comments=None):
+def define_subtypes(file: IO, basename: str, subclasses: Dict[str, List[str]],
+                    comments=None, resolved=None):
     # define each subclass
     """
     @Override
@@ -54,6 +76,7 @@ def define_subtypes(file: IO, basename: str, subclasses: Dict[str, List[str]], c
     }
     """
     if comments is None: comments = {}
+    if resolved is None: resolved = {}
     for subclass, fields in subclasses.items():
         file.write('\n')
 
@@ -65,12 +88,17 @@ def define_subtypes(file: IO, basename: str, subclasses: Dict[str, List[str]], c
         # fields
         for field in fields:
             file.write(f'{TAB*2}final {field};\n')
+
+        # fields filled in after parsing, not by the parser
+        for field in resolved.get(subclass, []):
+            file.write(f'{TAB*2}{field};\n')
         
         parameters = ', '.join(fields)
         
         # constructor
         file.write('\n')
         file.write(f'{TAB*2}{subclass}({parameters}) {{\n')
+        file.write(f'{TAB*3}super({tag_of(subclass)});\n')
         for field in fields:
             name = field.split(' ')[1]
             file.write(f'{TAB*3}this.{name} = {name};\n')
@@ -86,7 +114,8 @@ def define_subtypes(file: IO, basename: str, subclasses: Dict[str, List[str]], c
         file.write(f'{TAB}}}\n')
 
 
-def define_ast(output_dir: str, basename: str, subclasses: Dict[str, List[str]], comments=None):
+def define_ast(output_dir: str, basename: str, subclasses: Dict[str, List[str]],
+               comments=None, resolved=None):
     filepath = os.path.join(output_dir, basename + '.java')
 
     with open(filepath, 'w') as file:
@@ -96,8 +125,16 @@ def define_ast(output_dir: str, basename: str, subclasses: Dict[str, List[str]],
         file.write('\n')
         file.write(f'abstract class {basename} {{\n')
 
+        define_tags(file, subclasses)
+        file.write('\n')
+        file.write(f'{TAB}final int kind;\n')
+        file.write('\n')
+        file.write(f'{TAB}{basename}(int kind) {{\n')
+        file.write(f'{TAB*2}this.kind = kind;\n')
+        file.write(f'{TAB}}}\n')
+
         define_visitor(file, basename, subclasses)
-        define_subtypes(file, basename, subclasses, comments)
+        define_subtypes(file, basename, subclasses, comments, resolved)
 
         # base accept() method
         file.write('\n')
@@ -117,40 +154,92 @@ def main():
 
     define_ast(output_dir, 'Expr', {
         'Assign': ['Token name', 'Expr value'],
-        'Binary': ['Expr left', 'Token operator', 'Expr right'],
-        'Call': ['Expr callee', 'Token paren', 'List<Expr> arguments'],
+        'Binary': ['Expr left', 'TokenType operator', 'int line', 'Expr right'],
+        'Call': ['Expr callee', 'int line', 'Expr[] arguments'],
         'Get': ['Expr object', 'Token name'],
         'Grouping': ['Expr expression'],
+        'Inline': ['Expr.Call call', 'Stmt.Function function', 'Expr body'],
+        'Invoke': ['Expr object', 'Token name', 'int line', 'Expr[] arguments'],
         'Literal': ['Object value'],
-        'Logical': ['Expr left', 'Token operator', 'Expr right'],
+        'Logical': ['Expr left', 'TokenType operator', 'int line', 'Expr right'],
         'Set': ['Expr object', 'Token name', 'Expr value'],
         'Super': ['Token keyword', 'Token method'],
         'This': ['Token keyword'],
-        'Unary': ['Token operator', 'Expr right'],
+        'Unary': ['TokenType operator', 'int line', 'Expr right'],
         'Variable': ['Token name']
+    }, comments = {
+        'Binary': [
+            'Operators only keep their type and line, the text of an operator for',
+            'AstPrinter is the same for every one, see TokenBuffer.lexemeOf().'
+        ],
+        'Call': [
+            '"line" is the line of the closing parenthesis, for runtime errors.'
+        ],
+        'Inline': [
+            'A call of a small top-level function replaced by its body, created by',
+            'the Optimizer. The body only runs while the global still holds the',
+            'function, otherwise the original call is made.'
+        ],
+        'Invoke': [
+            'A call of a property, "object.name(arguments)". The parser',
+            'creates it instead of a Call of a Get so a method can be called',
+            'with its receiver, without creating a bound method.'
+        ],
+        'Variable': [
+            'A local is found "depth" scopes out, at "slot". A global, with a',
+            'depth of -1, is in "cell", bound by the Resolver. So is the global',
+            'of an Assign.'
+        ]
+    }, resolved = {
+        'Assign': ['int depth = -1', 'int slot = -1', 'GlobalCell cell'],
+        'Binary': ['BinaryNode node'],
+        'Get': ['final PropertyCache cache = new PropertyCache()'],
+        'Invoke': ['final PropertyCache cache = new PropertyCache()'],
+        'Set': ['final PropertyCache cache = new PropertyCache()'],
+        'Super': ['int depth = -1'],
+        'This': ['int depth = -1'],
+        'Variable': ['int depth = -1', 'int slot = -1', 'GlobalCell cell']
     })
 
     define_ast(output_dir, 'Stmt', {
-        'Block': ['List<Stmt> statements'],
+        'Block': ['Stmt[] statements'],
         'Break': ['Token keyword'],
         'Class': ['Token name', 'Expr.Variable superclass', 'List<Stmt.Function> methods'],
         'Continue': ['Token keyword'],
         'Expression': ['Expr expression'],
-        'Function': ['Token name', 'List<Token> params', 'List<Stmt> body'],
+        'For': ['Stmt initializer', 'Expr condition', 'Stmt increment', 'Stmt body'],
+        'Function': ['Token name', 'Token[] params', 'List<Stmt> body'],
         'If': ['Expr condition', 'Stmt thenBranch', 'Stmt elseBranch'],
         'Print': ['Expr expression'],
         'Return': ['Token keyword', 'Expr value'],
         'Var': ['Token name', 'Expr initializer'],
-        'While': ['Expr condition', 'Stmt body', 'Stmt increment']
+        'While': ['Expr condition', 'Stmt body']
     }, comments = {
-        'While': [
-            'This extra field "increment" will only be used in case of "for" loop.',
-            'It is kind of hack to get the "continue" statment working.',
-            'This "increment" statment will be executed separately after a "continue"',
-            'statement is encountered.',
-            '',
-            'This field will be "null" in case of "while" loop.'
+        'Return': [
+            'A returned call is made as a tail call when "tail" is set, which the',
+            'Resolver does outside the loops of the function: a break or continue',
+            'in the called function has to reach the loops of the caller.'
+        ],
+        'Function': [
+            'With "--lazy", the body of a top-level function or method is left',
+            'empty by the Parser, and "lazyBody" parses it on the first call.',
+            'That is why the body is a List, when the other nodes keep arrays of',
+            'the exact size.'
+        ],
+        'For': [
+            'The initializer is declared in a scope of its own, created once for',
+            'the whole loop, which the condition, increment and body run in.',
+            'The increment is an expression statement, or "null" if there is',
+            'none. It runs after the body, even when the body hits "continue".'
         ]
+    }, resolved = {
+        'Block': ['int scopeSize', 'boolean captured'],
+        'For': ['int scopeSize', 'boolean captured'],
+        'Class': ['int slot = -1'],
+        'Function': ['int slot = -1', 'int scopeSize', 'boolean captured', 'boolean isMethod',
+                     'int calls', 'JitCode code', 'LazyBody lazyBody'],
+        'Return': ['boolean tail'],
+        'Var': ['int slot = -1']
     })
 
 
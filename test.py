@@ -1,10 +1,17 @@
 """
 Script to test Yai agains the test cases present in folder "tests"
 
+Usage: python3 test.py [yai options]
+
+The ASTs yai caches are kept in a temporary directory, removed at the end,
+so the tests never write to the cache in the home directory.
+
 """
 
 import os
 import subprocess
+import sys
+import tempfile
 
 
 def print_in_color(color):
@@ -47,7 +54,7 @@ class Test:
 
     def run(self):
         process = subprocess.run(
-            [cmd, self.filepath],
+            [cmd, *yai_args, self.filepath],
             capture_output=True,
             bufsize=1,
             universal_newlines=True)
@@ -114,11 +121,17 @@ def main():
     red('Tests failed:', tests_failed)
     if total_tests == tests_passed:
         green('All passed (OK)')
+    else:
+        sys.exit(1)
 
 
 if __name__ == '__main__':
+    # extra arguments are passed on to yai, e.g. --engine=vm
+    yai_args = sys.argv[1:]
     test_directory = 'tests'
     red = print_in_color('red')
     green = print_in_color('green')
     cmd = './yai'
-    main()
\ No newline at end of file
+    with tempfile.TemporaryDirectory() as cache_directory:
+        yai_args = ['--cache-dir=' + cache_directory, *yai_args]
+        main()
\ No newline at end of file